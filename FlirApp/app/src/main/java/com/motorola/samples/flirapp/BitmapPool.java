@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.flirapp;
+
+import android.graphics.Bitmap;
+
+/**
+ * Fixed ring of pre-allocated bitmaps shared between the decoder and the UI.
+ *
+ * The producer acquire()s a free bitmap, fills it and hands it to the consumer,
+ * which must release() it once it is no longer displayed. Nothing is allocated
+ * after construction, so steady-state streaming does not churn native bitmaps.
+ * Each bitmap also carries the capture and ready times of the frame it holds.
+ */
+public class BitmapPool {
+    private final Bitmap[] mBitmaps;
+    private final boolean[] mFree;
+    private final long[] mCaptureNs;
+    private final long[] mReadyNs;
+    private int mNext = 0;
+
+    public BitmapPool(int width, int height, int count) {
+        mBitmaps = new Bitmap[count];
+        mFree = new boolean[count];
+        mCaptureNs = new long[count];
+        mReadyNs = new long[count];
+        for (int i = 0; i < count; i++) {
+            mBitmaps[i] = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mFree[i] = true;
+        }
+    }
+
+    /** Returns the next free bitmap in ring order, or null if all are held */
+    public synchronized Bitmap acquire() {
+        for (int i = 0; i < mBitmaps.length; i++) {
+            int idx = (mNext + i) % mBitmaps.length;
+            if (mFree[idx]) {
+                mFree[idx] = false;
+                mNext = (idx + 1) % mBitmaps.length;
+                return mBitmaps[idx];
+            }
+        }
+        return null;
+    }
+
+    /** Hands a bitmap obtained from acquire() back to the ring */
+    public synchronized void release(Bitmap bitmap) {
+        int idx = indexOf(bitmap);
+        if (idx < 0) {
+            Logger.warn("Released bitmap does not belong to the pool");
+            return;
+        }
+        mFree[idx] = true;
+    }
+
+    /** Record when the frame in bitmap was captured and when it was ready to show, in System.nanoTime() */
+    public synchronized void setTimes(Bitmap bitmap, long captureNs, long readyNs) {
+        int idx = indexOf(bitmap);
+        if (idx >= 0) {
+            mCaptureNs[idx] = captureNs;
+            mReadyNs[idx] = readyNs;
+        }
+    }
+
+    public synchronized long getCaptureTime(Bitmap bitmap) {
+        int idx = indexOf(bitmap);
+        return idx < 0 ? 0 : mCaptureNs[idx];
+    }
+
+    public synchronized long getReadyTime(Bitmap bitmap) {
+        int idx = indexOf(bitmap);
+        return idx < 0 ? 0 : mReadyNs[idx];
+    }
+
+    public synchronized int available() {
+        int count = 0;
+        for (boolean free : mFree) {
+            if (free)
+                count++;
+        }
+        return count;
+    }
+
+    private int indexOf(Bitmap bitmap) {
+        for (int i = 0; i < mBitmaps.length; i++) {
+            if (mBitmaps[i] == bitmap) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
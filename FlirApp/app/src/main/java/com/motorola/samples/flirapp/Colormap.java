@@ -0,0 +1,227 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.flirapp;
+
+import java.nio.ByteOrder;
+
+/**
+ * Maps 14-bit raw sensor values to packed bitmap pixels through lookup tables.
+ *
+ * Each palette is expanded once into 256 packed colors. For every min/max window
+ * a raw-to-pixel table is filled for the values inside that window only, and is
+ * reused as long as the window does not change. Palette switches are picked up
+ * by the decoding thread at the next frame.
+ *
+ * With equalization on and a histogram of the frame at hand, the table instead
+ * spreads the colors by pixel count rather than by value, which brings out
+ * detail in scenes that only use a small part of their min/max window.
+ */
+public class Colormap {
+    public static final int RAW_RANGE = 0x4000;
+    public static final int STEPS = 256;
+
+    public enum Palette {
+        RED_BLUE,
+        IRON,
+        RAINBOW,
+        GRAYSCALE
+    }
+
+    // Color stops as {position, r, g, b}, position in 0..255
+    private static final int[][] IRON_STOPS = {
+            {0, 0, 0, 0},
+            {64, 32, 0, 140},
+            {128, 204, 0, 119},
+            {192, 255, 165, 0},
+            {230, 255, 255, 0},
+            {255, 255, 255, 255}
+    };
+    private static final int[][] RAINBOW_STOPS = {
+            {0, 0, 0, 255},
+            {64, 0, 255, 255},
+            {128, 0, 255, 0},
+            {192, 255, 255, 0},
+            {255, 255, 0, 0}
+    };
+
+    private static final boolean LITTLE_ENDIAN =
+            ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    private final int[] mColors = new int[STEPS];
+    private final int[] mLut = new int[RAW_RANGE];
+    private int mLutMin = -1;
+    private int mLutMax = -1;
+
+    private Palette mPalette;
+    private volatile Palette mRequested;
+    private volatile boolean mEqualize = false;
+
+    public Colormap(Palette palette) {
+        mRequested = palette;
+    }
+
+    /** May be called from any thread, takes effect on the next map() */
+    public void setPalette(Palette palette) {
+        mRequested = palette;
+    }
+
+    public Palette getPalette() {
+        return mRequested;
+    }
+
+    /** Histogram equalization instead of a linear stretch, for frames mapped with a histogram */
+    public void setEqualize(boolean enabled) {
+        mEqualize = enabled;
+    }
+
+    public boolean isEqualize() {
+        return mEqualize;
+    }
+
+    /**
+     * Fill out[0..count) with pixels for raw[0..count), stretched linearly
+     * between min and max. Pixels are packed in the byte order expected by
+     * Bitmap.copyPixelsFromBuffer() on a native-order buffer.
+     */
+    public void map(short[] raw, int count, int min, int max, int[] out) {
+        map(raw, count, min, max, null, out);
+    }
+
+    /**
+     * Same as map() above; histogram, when not null, holds the count of every
+     * value in raw[0..count) and is used if equalization is on.
+     */
+    public void map(short[] raw, int count, int min, int max, int[] histogram, int[] out) {
+        Palette requested = mRequested;
+        if (requested != mPalette) {
+            buildColors(requested);
+            mPalette = requested;
+            mLutMin = -1;
+        }
+
+        int diff = max - min;
+        if (diff <= 0) {
+            int color = mColors[0];
+            for (int i = 0; i < count; i++) {
+                out[i] = color;
+            }
+            return;
+        }
+
+        if (histogram != null && mEqualize) {
+            buildEqualizedLut(histogram, count, min, max);
+            mapWithLut(raw, count, out);
+        } else if (min == mLutMin && max == mLutMax) {
+            mapWithLut(raw, count, out);
+        } else if (diff < count) {
+            // Cheaper to fill the window than to scale every pixel
+            buildLut(min, max);
+            mapWithLut(raw, count, out);
+        } else {
+            int scale = ((STEPS - 1) << 16) / diff;
+            for (int i = 0; i < count; i++) {
+                out[i] = mColors[((raw[i] - min) * scale + 0x8000) >> 16];
+            }
+        }
+    }
+
+    private void mapWithLut(short[] raw, int count, int[] out) {
+        int[] lut = mLut;
+        for (int i = 0; i < count; i++) {
+            out[i] = lut[raw[i]];
+        }
+    }
+
+    private void buildLut(int min, int max) {
+        int diff = max - min;
+        int half = diff / 2;
+        for (int v = min; v <= max; v++) {
+            mLut[v] = mColors[((v - min) * (STEPS - 1) + half) / diff];
+        }
+        mLutMin = min;
+        mLutMax = max;
+    }
+
+    // Each value gets the color of the middle of its rank among the pixels
+    private void buildEqualizedLut(int[] histogram, int count, int min, int max) {
+        long total = 2L * count;
+        long below = 0;
+        for (int v = min; v <= max; v++) {
+            int n = histogram[v];
+            mLut[v] = mColors[(int) ((2 * below + n) * (STEPS - 1) / total)];
+            below += n;
+        }
+        // The table no longer matches a linear window
+        mLutMin = -1;
+    }
+
+    private void buildColors(Palette palette) {
+        for (int i = 0; i < STEPS; i++) {
+            switch (palette) {
+                case IRON:
+                    mColors[i] = interpolate(IRON_STOPS, i);
+                    break;
+                case RAINBOW:
+                    mColors[i] = interpolate(RAINBOW_STOPS, i);
+                    break;
+                case GRAYSCALE:
+                    mColors[i] = pack(i, i, i);
+                    break;
+                case RED_BLUE:
+                default:
+                    mColors[i] = pack(i, 0x00, 0xFF - i);
+                    break;
+            }
+        }
+    }
+
+    private static int interpolate(int[][] stops, int pos) {
+        for (int s = 1; s < stops.length; s++) {
+            int[] hi = stops[s];
+            if (pos <= hi[0]) {
+                int[] lo = stops[s - 1];
+                int span = hi[0] - lo[0];
+                int t = pos - lo[0];
+                return pack(lo[1] + (hi[1] - lo[1]) * t / span,
+                        lo[2] + (hi[2] - lo[2]) * t / span,
+                        lo[3] + (hi[3] - lo[3]) * t / span);
+            }
+        }
+        int[] last = stops[stops.length - 1];
+        return pack(last[1], last[2], last[3]);
+    }
+
+    /** ARGB_8888 bitmaps store R, G, B, A in memory order */
+    private static int pack(int r, int g, int b) {
+        if (LITTLE_ENDIAN) {
+            return 0xFF000000 | (b << 16) | (g << 8) | r;
+        }
+        return (r << 24) | (g << 16) | (b << 8) | 0xFF;
+    }
+}
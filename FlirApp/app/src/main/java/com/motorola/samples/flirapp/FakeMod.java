@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.flirapp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Scripted stand-in for a Mod's firmware on the far end of a raw channel.
+ *
+ * Bytes written by the app are handed to Script.onReceive() on a receive thread;
+ * Script.run() is called once on a transmit thread for scripts that stream on
+ * their own. Only java.io is used, so scripts also run on a plain JVM.
+ */
+public class FakeMod {
+    private static final int READ_BYTES = 1024;
+
+    private final InputStream mInput;
+    private final OutputStream mOutput;
+    private final Script mScript;
+    private final Object mWriteLock = new Object();
+
+    private volatile boolean mRunning = false;
+    private Thread mRxThread;
+    private Thread mTxThread;
+
+    public static abstract class Script {
+        // Transmit thread; return when done or once mod.isRunning() turns false
+        public void run(FakeMod mod) throws IOException, InterruptedException {
+        }
+
+        // Receive thread; one call per chunk read from the app
+        public void onReceive(FakeMod mod, byte[] data, int length) throws IOException {
+        }
+    }
+
+    public FakeMod(InputStream in, OutputStream out, Script script) {
+        mInput = in;
+        mOutput = out;
+        mScript = script;
+    }
+
+    public synchronized void start() {
+        if (mRunning) return;
+        mRunning = true;
+
+        mRxThread = new Thread("FakeModRx") {
+            @Override
+            public void run() {
+                byte[] buffer = new byte[READ_BYTES];
+                try {
+                    int len;
+                    while (mRunning && (len = mInput.read(buffer, 0, buffer.length)) >= 0) {
+                        if (len > 0) {
+                            mScript.onReceive(FakeMod.this, buffer, len);
+                        }
+                    }
+                } catch (IOException e) {
+                    // Channel closed
+                }
+                mRunning = false;
+            }
+        };
+        mTxThread = new Thread("FakeModTx") {
+            @Override
+            public void run() {
+                try {
+                    mScript.run(FakeMod.this);
+                } catch (IOException e) {
+                    // Channel closed
+                } catch (InterruptedException e) {
+                    // Stopped
+                }
+            }
+        };
+        mRxThread.start();
+        mTxThread.start();
+    }
+
+    public synchronized void stop() {
+        mRunning = false;
+        if (mTxThread != null) {
+            mTxThread.interrupt();
+            mTxThread = null;
+        }
+        mRxThread = null;
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    // Send bytes to the app, may be called from either thread
+    public void write(byte[] data, int offset, int length) throws IOException {
+        synchronized (mWriteLock) {
+            mOutput.write(data, offset, length);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FakeMod " + mScript.getClass().getSimpleName();
+    }
+
+    // Send back everything the app writes
+    public static class EchoScript extends Script {
+        @Override
+        public void onReceive(FakeMod mod, byte[] data, int length) throws IOException {
+            mod.write(data, 0, length);
+        }
+    }
+
+    // Play a captured byte stream back in fixed chunks, optionally paced and looped
+    public static class ReplayScript extends Script {
+        private final byte[] mCapture;
+        private final int mChunkBytes;
+        private final long mIntervalMs;
+        private final boolean mLoop;
+
+        public ReplayScript(byte[] capture, int chunkBytes, long intervalMs, boolean loop) {
+            mCapture = capture;
+            mChunkBytes = chunkBytes;
+            mIntervalMs = intervalMs;
+            mLoop = loop;
+        }
+
+        @Override
+        public void run(FakeMod mod) throws IOException, InterruptedException {
+            do {
+                for (int offset = 0; offset < mCapture.length && mod.isRunning();
+                     offset += mChunkBytes) {
+                    mod.write(mCapture, offset, Math.min(mChunkBytes, mCapture.length - offset));
+                    if (mIntervalMs > 0) {
+                        Thread.sleep(mIntervalMs);
+                    }
+                }
+            } while (mLoop && mod.isRunning());
+        }
+    }
+}
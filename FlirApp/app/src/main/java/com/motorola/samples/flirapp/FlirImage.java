@@ -29,107 +29,335 @@
 package com.motorola.samples.flirapp;
 
 import android.graphics.Bitmap;
+import android.os.Process;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.concurrent.locks.LockSupport;
 
-public class FlirImage implements RawDevice.DataCallback {
+public class FlirImage implements RawDevice.DataCallback, LineDecoder.Listener {
 
-    private static final int FLIR_WIDTH = 80;
-    private static final int FLIR_HEIGHT = 60;
+    private final SensorGeometry mGeometry;
 
-    private int[] mRaw = new int[FLIR_HEIGHT * FLIR_WIDTH];
-    private ByteBuffer mPix = ByteBuffer.allocateDirect(FLIR_WIDTH * FLIR_HEIGHT * 4);
+    private final ByteBuffer mPix;
+    private final IntBuffer mPixInts;
+    private final int[] mColors;
 
-    private static final int MAX_STEPS = 256;
+    private Colormap mColormap = new Colormap(Colormap.Palette.RED_BLUE);
 
-    private int mMax = 0;
-    private int mMin = 0xFFFF;
-    private int mNextId = 0;
-    private int mRawCount = 0;
+    // Triple buffering: one bitmap displayed, one queued to the UI, one being filled
+    private static final int BITMAP_COUNT = 3;
+    private final BitmapPool mPool;
+    private int mSkippedFrames = 0;
 
+    // Decoding runs on the RawDevice thread, colorizing on a dedicated render worker
+    private static final int QUEUE_CAPACITY = 2;
+    private final FrameQueue mQueue;
+    private RawFrame mDecoding;
+    private long mSequence = 0;
+
+    private final LineDecoder mDecoder;
+    private volatile RenderThread mRenderThread;
+    private volatile FrameRecorder mFrameRecorder;
+
+    // Regions measured on the render worker, replaced as a whole by setRegions()
+    private final RegionStats mRegionStats;
+    private volatile RegionStats.Region[] mRegions = new RegionStats.Region[0];
+    private volatile RegionListener mRegionListener;
+
+    // Absolute temperatures, converted on the render worker while a listener is set
+    private final Radiometry mRadiometry = new Radiometry(Radiometry.LEPTON_NOMINAL);
+    private final float[] mCelsius;
+    private volatile TemperatureListener mTemperatureListener;
+
+    // Pipeline telemetry, see Metrics.report(); the frames rate is the decoded fps
+    private final Metrics.Counter mFrames = Metrics.get().counter("flir.frames");
+    private final Metrics.Counter mResyncs = Metrics.get().counter("flir.resyncs");
+    private final Metrics.Counter mCrcErrors = Metrics.get().counter("flir.crc_errors");
+    private final Metrics.Counter mQueueDrops = Metrics.get().counter("flir.queue_drops");
+    private final Metrics.Counter mSkips = Metrics.get().counter("flir.bitmap_skips");
+    private final Metrics.Histogram mDecodeTime = Metrics.get().histogram("flir.decode");
+    private final Metrics.Histogram mColorizeTime = Metrics.get().histogram("flir.colorize");
+    private final Metrics.Histogram mUploadTime = Metrics.get().histogram("flir.upload");
+    private final Metrics.Histogram mRegionTime = Metrics.get().histogram("flir.regions");
+    private final Metrics.Histogram mRadiometryTime = Metrics.get().histogram("flir.radiometry");
+    private long mDecodeNs = 0;         // Reader thread, decode time of the frame in progress
+    private boolean mFrameDone = false;
+    private int mLastResyncs = 0;
+    private int mLastCrcErrors = 0;
+    private long mLastQueueDrops = 0;
+
+    /**
+     * The bitmap passed to onImageUpdated() belongs to the listener until it is
+     * handed back with releaseBitmap(); it is refilled in place afterwards.
+     */
     public interface UpdateListener {
         public void onImageUpdated(Bitmap bitmap);
     }
 
     private UpdateListener mListener;
 
-    public FlirImage(UpdateListener listener) {
+    public interface RegionListener {
+        /** Called on the render worker with the regions measured on frame sequence */
+        public void onRegionStats(RegionStats.Region[] regions, long sequence);
+    }
+
+    public interface TemperatureListener {
+        /**
+         * Called on the render worker with degrees Celsius for every pixel of
+         * frame sequence. The array is reused for the next frame.
+         */
+        public void onTemperatures(float[] celsius, long sequence);
+    }
+
+    public FlirImage(UpdateListener listener, SensorGeometry geometry) {
         mListener = listener;
+        mGeometry = geometry;
+        int pixels = geometry.getPixels();
+        mPix = ByteBuffer.allocateDirect(pixels * 4).order(ByteOrder.nativeOrder());
+        mPixInts = mPix.asIntBuffer();
+        mColors = new int[pixels];
+        mCelsius = new float[pixels];
+        mPool = new BitmapPool(geometry.width, geometry.height, BITMAP_COUNT);
+        mQueue = new FrameQueue(QUEUE_CAPACITY, geometry.width, geometry.height, true);
+        mDecoder = new LineDecoder(geometry, this);
+        mRegionStats = new RegionStats(geometry.width, geometry.height);
+        mDecoding = mQueue.acquire();
+        mDecoder.setFrame(mDecoding.pixels);
+        mDecoder.setHistogram(mDecoding.histogram);
     }
 
-    @Override
-    public void onData(byte[] data, int len) {
-        ByteBuffer buffer = ByteBuffer.wrap(data, 0, len);
-        buffer.order(ByteOrder.BIG_ENDIAN);
-
-        boolean sof = false;
-        int sofar = 0;
-        while (sofar < len) {
-            if (mRawCount % FLIR_WIDTH == 0) {
-                sof = true;
-            }
+    /** Start the render worker, frames decoded before this are dropped */
+    public synchronized void start() {
+        if (mRenderThread != null)
+            return;
+        mDecoder.reset();
+        mRenderThread = new RenderThread();
+        mRenderThread.start();
+    }
 
-            if (sof) {
-                int id = buffer.getShort();
-                id &= 0x0FFF;
-                int crc = buffer.getShort();
-                sof = false;
-                sofar += 4;
-                if (id != mNextId) {
-                    // Drop entire packet and wait for sync
-                    Logger.warn("Unexpected line id:" + id + " expected:" + mNextId);
-                    mRawCount = 0;
-                    mNextId = 0;
-                    break;
-                } else {
-                    mNextId++;
-                }
-            }
-            int val = buffer.getShort();
-            sofar += 2;
+    public synchronized void stop() {
+        RenderThread thread = mRenderThread;
+        if (thread == null)
+            return;
+        mRenderThread = null;
+        thread.quit();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+        }
+
+        RawFrame frame;
+        while ((frame = mQueue.poll()) != null) {
+            mQueue.recycle(frame);
+        }
+    }
+
+    public void setDropPolicy(FrameQueue.DropPolicy policy) {
+        mQueue.setDropPolicy(policy);
+    }
+
+    public long getDroppedFrames() {
+        return mQueue.getDroppedFrames();
+    }
+
+    public void releaseBitmap(Bitmap bitmap) {
+        mPool.release(bitmap);
+    }
+
+    public void setPalette(Colormap.Palette palette) {
+        mColormap.setPalette(palette);
+    }
+
+    public Colormap.Palette getPalette() {
+        return mColormap.getPalette();
+    }
+
+    /** Histogram equalized contrast instead of a linear min/max stretch */
+    public void setEqualize(boolean enabled) {
+        mColormap.setEqualize(enabled);
+    }
+
+    public boolean isEqualize() {
+        return mColormap.isEqualize();
+    }
+
+    /**
+     * Measure regions on every frame from now on. The array and its regions
+     * are written by the render worker; pass a new array to change them.
+     */
+    public void setRegions(RegionStats.Region[] regions) {
+        mRegions = regions;
+    }
+
+    public void setRegionListener(RegionListener listener) {
+        mRegionListener = listener;
+    }
+
+    /**
+     * Calibration, emissivity and reflected temperature for the conversion to
+     * temperatures. Region listeners may convert with it on the render worker.
+     */
+    public Radiometry getRadiometry() {
+        return mRadiometry;
+    }
+
+    /** Receive absolute temperatures of every frame, or stop with null */
+    public void setTemperatureListener(TemperatureListener listener) {
+        mTemperatureListener = listener;
+    }
+
+    public SensorGeometry getGeometry() {
+        return mGeometry;
+    }
+
+    public int getSkippedFrames() {
+        return mSkippedFrames;
+    }
 
-            val &= 0x3FFF;
-            mRaw[mRawCount] = val;
-            mRawCount++;
+    /** Keep a lossless copy of every decoded frame, or stop with null */
+    public void setFrameRecorder(FrameRecorder recorder) {
+        mFrameRecorder = recorder;
+    }
 
-            if (val > mMax)
-                mMax = val;
+    public LineDecoder getDecoder() {
+        return mDecoder;
+    }
 
-            if (val < mMin)
-                mMin = val;
+    @Override
+    public void onData(ByteBuffer data) {
+        long start = System.nanoTime();
+        mDecoder.decode(data);
+        mDecodeNs += System.nanoTime() - start;
+        if (mFrameDone) {
+            // Summed over every read the frame was spread across
+            mDecodeTime.record(mDecodeNs);
+            mDecodeNs = 0;
+            mFrameDone = false;
         }
+    }
 
-        if (mRawCount == mRaw.length) {
-            //Logger.dbg("max:" + mMax + " min:" + mMin);
-            updatePixValue();
-            mMax = 0;
-            mMin = 0xFFFF;
-            mNextId = 0;
-            mRawCount = 0;
+    // Reader thread: only hand the frame over, the worker does the rest
+    @Override
+    public void onFrame(short[] frame, int min, int max) {
+        RenderThread thread = mRenderThread;
+        if (thread == null)
+            return;
+
+        mDecoding.min = min;
+        mDecoding.max = max;
+        mDecoding.sequence = mSequence++;
+        mDecoding.timestampNs = mDecoder.getFrameStartNanos();
+        FrameRecorder recorder = mFrameRecorder;
+        if (recorder != null) {
+            recorder.record(mDecoding);
         }
+        mDecoding = mQueue.publish(mDecoding);
+        // Counts from the frame's last use, only min..max needs zeroing
+        mDecoding.clearHistogram();
+        mDecoder.setFrame(mDecoding.pixels);
+        mDecoder.setHistogram(mDecoding.histogram);
+        LockSupport.unpark(thread);
+
+        mFrameDone = true;
+        updateCounters();
     }
 
-    public void updatePixValue() {
-        int diff = mMax - mMin;
-        float scale = (float)(MAX_STEPS - 1)/(float)diff;
+    // Move the decoder and queue totals into Metrics once per frame
+    private void updateCounters() {
+        mFrames.increment();
+        int resyncs = mDecoder.getResyncCount();
+        mResyncs.add(resyncs - mLastResyncs);
+        mLastResyncs = resyncs;
+        int crcErrors = mDecoder.getCrcErrorCount();
+        mCrcErrors.add(crcErrors - mLastCrcErrors);
+        mLastCrcErrors = crcErrors;
+        long drops = mQueue.getDroppedFrames();
+        mQueueDrops.add(drops - mLastQueueDrops);
+        mLastQueueDrops = drops;
+    }
 
-        mPix.rewind();
+    /** Bitmap pool, to look up the capture and ready times of a bitmap being shown */
+    public BitmapPool getBitmapPool() {
+        return mPool;
+    }
+
+    private class RenderThread extends Thread {
+        private volatile boolean mRunning = true;
 
-        for (int idx = 0; idx < mRaw.length; idx++) {
-            int offset = mRaw[idx] - mMin;
-            int mapIdx = Math.round((float)offset * scale);
-            mPix.put((byte)mapIdx); // R
-            mPix.put((byte)0x00); // G - always 0
-            mPix.put((byte)(0xFF - mapIdx)); // B
-            mPix.put((byte)0xFF); // A - set to FF
+        RenderThread() {
+            super("FlirRender");
         }
 
+        void quit() {
+            mRunning = false;
+            LockSupport.unpark(this);
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_DISPLAY);
+            while (mRunning) {
+                RawFrame frame = mQueue.poll();
+                if (frame == null) {
+                    LockSupport.park(this);
+                    continue;
+                }
+                measureRegions(frame);
+                convertTemperatures(frame);
+                updatePixValue(frame);
+                mQueue.recycle(frame);
+            }
+        }
+    }
+
+    private void measureRegions(RawFrame frame) {
+        RegionStats.Region[] regions = mRegions;
+        RegionListener listener = mRegionListener;
+        if (regions.length == 0 || listener == null)
+            return;
+
+        long start = System.nanoTime();
+        mRegionStats.update(frame.pixels);
+        mRegionStats.measure(regions);
+        mRegionTime.recordSince(start);
+        listener.onRegionStats(regions, frame.sequence);
+    }
+
+    private void convertTemperatures(RawFrame frame) {
+        TemperatureListener listener = mTemperatureListener;
+        if (listener == null)
+            return;
+
+        long start = System.nanoTime();
+        mRadiometry.toCelsius(frame.pixels, frame.pixels.length, mCelsius);
+        mRadiometryTime.recordSince(start);
+        listener.onTemperatures(mCelsius, frame.sequence);
+    }
+
+    private void updatePixValue(RawFrame frame) {
+        long start = System.nanoTime();
+        mColormap.map(frame.pixels, frame.pixels.length, frame.min, frame.max, frame.histogram, mColors);
+        long mapped = System.nanoTime();
+        mColorizeTime.record(mapped - start);
+
+        mPixInts.clear();
+        mPixInts.put(mColors);
         mPix.rewind();
 
         if (mListener != null) {
-            Bitmap bm = Bitmap.createBitmap(FLIR_WIDTH, FLIR_HEIGHT, Bitmap.Config.ARGB_8888);
+            Bitmap bm = mPool.acquire();
+            if (bm == null) {
+                // Listener still holds every bitmap, drop this frame
+                mSkippedFrames++;
+                mSkips.increment();
+                return;
+            }
             bm.copyPixelsFromBuffer(mPix);
+            long ready = System.nanoTime();
+            mUploadTime.record(ready - mapped);
+            mPool.setTimes(bm, frame.timestampNs, ready);
             mListener.onImageUpdated(bm);
         }
     }
@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.flirapp;
+
+import java.io.IOException;
+
+/**
+ * FakeMod script that streams synthetic VoSPI frames, for running FlirApp
+ * over a LoopbackTransport without the camera Mod attached.
+ *
+ * Frames start on the "on" command and stop on "off", like the real Mod.
+ * Each frame is a moving gradient with a valid CRC on every packet, split into
+ * segments as the geometry says.
+ */
+public class FlirStreamScript extends FakeMod.Script {
+    private static final int HEADER_BYTES = SensorGeometry.HEADER_BYTES;
+
+    private final SensorGeometry mGeometry;
+    private final long mFrameIntervalMs;
+    private final byte[] mFrame;
+    private volatile boolean mStreaming = false;
+
+    public FlirStreamScript(int width, int height, int fps) {
+        this(new SensorGeometry(width, height, width, 1), fps);
+    }
+
+    public FlirStreamScript(SensorGeometry geometry, int fps) {
+        mGeometry = geometry;
+        mFrameIntervalMs = 1000 / fps;
+        mFrame = new byte[geometry.getFrameBytes()];
+    }
+
+    @Override
+    public void onReceive(FakeMod mod, byte[] data, int length) throws IOException {
+        String cmd = new String(data, 0, length);
+        if (cmd.startsWith("on")) {
+            mStreaming = true;
+        } else if (cmd.startsWith("off")) {
+            mStreaming = false;
+        }
+    }
+
+    @Override
+    public void run(FakeMod mod) throws IOException, InterruptedException {
+        int count = 0;
+        while (mod.isRunning()) {
+            if (mStreaming) {
+                byte[] frame = buildFrame(count++);
+                mod.write(frame, 0, frame.length);
+            }
+            Thread.sleep(mFrameIntervalMs);
+        }
+    }
+
+    /** Fill and return the packets of frame number count; the array is reused */
+    public byte[] buildFrame(int count) {
+        SensorGeometry g = mGeometry;
+        int lineBytes = g.packetBytes;
+        int packets = g.segments * g.packetsPerSegment;
+        for (int packet = 0; packet < packets; packet++) {
+            int segment = packet / g.packetsPerSegment;
+            int id = packet % g.packetsPerSegment;
+            if (g.segments > 1 && id == SensorGeometry.SEGMENT_ID_PACKET) {
+                id |= (segment + 1) << 12;
+            }
+            int offset = packet * lineBytes;
+            mFrame[offset] = (byte) (id >> 8);
+            mFrame[offset + 1] = (byte) id;
+            mFrame[offset + 2] = 0;
+            mFrame[offset + 3] = 0;
+            int pixel = packet * g.packetPixels;
+            for (int i = 0; i < g.packetPixels; i++, pixel++) {
+                int x = pixel % g.width;
+                int y = pixel / g.width;
+                int val = 8000 + ((x + y + count) % (g.width + g.height)) * 8;
+                mFrame[offset + HEADER_BYTES + i * 2] = (byte) (val >> 8);
+                mFrame[offset + HEADER_BYTES + i * 2 + 1] = (byte) val;
+            }
+            int crc = LineDecoder.packetCrc(mFrame, offset, lineBytes);
+            mFrame[offset + 2] = (byte) (crc >> 8);
+            mFrame[offset + 3] = (byte) crc;
+        }
+        return mFrame;
+    }
+}
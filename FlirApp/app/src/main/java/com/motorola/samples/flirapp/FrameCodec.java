@@ -0,0 +1,184 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.flirapp;
+
+/**
+ * Lossless per-frame compression of 14-bit sensor frames.
+ *
+ * A key frame predicts each pixel from its left neighbour, a delta frame from
+ * the same pixel of the previous frame. The prediction errors are written as
+ * unsigned varints: an odd value is a run of (value >> 1) pixels that match
+ * their prediction, an even value is one zigzag-coded error of (value >> 1).
+ * Unchanged areas of a mostly static scene cost a byte or two per run, and
+ * sensor noise of up to +/-31 counts costs one byte per pixel instead of two.
+ *
+ * The codec keeps the last frame it encoded or decoded, so one instance
+ * handles one stream in order. Every keyInterval-th frame is a key frame,
+ * which bounds how far a reader must go back to start decoding.
+ */
+public class FrameCodec {
+    public static final int KEY_FRAME = 0;
+    public static final int DELTA_FRAME = 1;
+
+    private final int mPixels;
+    private final int mKeyInterval;
+    private final short[] mPrevious;
+    private boolean mHavePrevious = false;
+    private int mSinceKey = 0;
+
+    /** keyInterval of 1 makes every frame a key frame */
+    public FrameCodec(int pixels, int keyInterval) {
+        if (keyInterval <= 0) {
+            throw new IllegalArgumentException("keyInterval must be positive");
+        }
+        mPixels = pixels;
+        mKeyInterval = keyInterval;
+        mPrevious = new short[pixels];
+    }
+
+    /** Largest encoding of a frame of pixels values, for sizing output buffers */
+    public static int maxEncodedSize(int pixels) {
+        // Type byte, then at worst a 3 byte error per pixel
+        return 1 + pixels * 3;
+    }
+
+    /** KEY_FRAME or DELTA_FRAME, from the first byte of an encoded frame */
+    public static int frameType(byte[] in, int offset) {
+        return in[offset];
+    }
+
+    /** Make the next encoded frame a key frame, and forget the previous decoded one */
+    public void reset() {
+        mHavePrevious = false;
+        mSinceKey = 0;
+    }
+
+    /** Encode frame into out at offset, returns the encoded length */
+    public int encode(short[] frame, byte[] out, int offset) {
+        boolean key = !mHavePrevious || mSinceKey == 0;
+        int pos = offset;
+        out[pos++] = (byte) (key ? KEY_FRAME : DELTA_FRAME);
+
+        short[] prev = mPrevious;
+        int run = 0;
+        int last = 0;
+        for (int i = 0; i < mPixels; i++) {
+            int val = frame[i];
+            int predicted = key ? last : prev[i];
+            last = val;
+            if (val == predicted) {
+                run++;
+                continue;
+            }
+            if (run > 0) {
+                pos = putVarint(out, pos, (run << 1) | 1);
+                run = 0;
+            }
+            int err = val - predicted;
+            pos = putVarint(out, pos, ((err << 1) ^ (err >> 31)) << 1);
+        }
+        if (run > 0) {
+            pos = putVarint(out, pos, (run << 1) | 1);
+        }
+
+        System.arraycopy(frame, 0, prev, 0, mPixels);
+        mHavePrevious = true;
+        mSinceKey = (mSinceKey + 1) % mKeyInterval;
+        return pos - offset;
+    }
+
+    /**
+     * Decode length bytes at offset into out. Returns false for a delta frame
+     * without the frame before it, or for corrupt data; out is then undefined.
+     */
+    public boolean decode(byte[] in, int offset, int length, short[] out) {
+        if (length < 1)
+            return false;
+        int end = offset + length;
+        int pos = offset;
+        int type = in[pos++];
+        boolean key = type == KEY_FRAME;
+        if (!key && (type != DELTA_FRAME || !mHavePrevious))
+            return false;
+
+        short[] prev = mPrevious;
+        int i = 0;
+        int last = 0;
+        while (i < mPixels) {
+            // Inline varint read, at most 3 bytes for 14-bit errors and runs
+            if (pos >= end)
+                return false;
+            int b = in[pos++];
+            int v = b & 0x7F;
+            int shift = 7;
+            while (b < 0) {
+                if (pos >= end || shift > 21)
+                    return false;
+                b = in[pos++];
+                v |= (b & 0x7F) << shift;
+                shift += 7;
+            }
+
+            if ((v & 1) != 0) {
+                int run = v >>> 1;
+                if (run > mPixels - i)
+                    return false;
+                if (key) {
+                    for (int n = 0; n < run; n++) {
+                        out[i++] = (short) last;
+                    }
+                } else {
+                    System.arraycopy(prev, i, out, i, run);
+                    i += run;
+                }
+            } else {
+                int zz = v >>> 1;
+                int err = (zz >>> 1) ^ -(zz & 1);
+                int val = (key ? last : prev[i]) + err;
+                out[i++] = (short) val;
+                last = val;
+            }
+        }
+        if (pos != end)
+            return false;
+
+        System.arraycopy(out, 0, prev, 0, mPixels);
+        mHavePrevious = true;
+        return true;
+    }
+
+    private static int putVarint(byte[] out, int pos, int v) {
+        while ((v & ~0x7F) != 0) {
+            out[pos++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out[pos++] = (byte) v;
+        return pos;
+    }
+}
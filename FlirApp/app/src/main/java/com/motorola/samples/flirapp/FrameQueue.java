@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.flirapp;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free hand-off of decoded frames from the reader thread to the render worker.
+ *
+ * A fixed set of frames circulates between two rings: the producer fills a frame
+ * and publish()es it to the ready ring, the consumer poll()s it, renders it and
+ * recycle()s it to the free ring. When the consumer falls behind, the producer
+ * either steals back the oldest ready frame (DROP_OLDEST) or refills the frame it
+ * just decoded (DROP_NEWEST). Neither side ever blocks or allocates.
+ */
+public class FrameQueue {
+
+    public enum DropPolicy {
+        DROP_OLDEST,
+        DROP_NEWEST
+    }
+
+    private final Ring mReady;
+    private final Ring mFree;
+    private volatile DropPolicy mPolicy = DropPolicy.DROP_OLDEST;
+
+    private final AtomicLong mPublished = new AtomicLong();
+    private final AtomicLong mDropped = new AtomicLong();
+
+    /** capacity is the number of frames beyond the two in use that may wait for the consumer */
+    public FrameQueue(int capacity, int width, int height) {
+        this(capacity, width, height, false);
+    }
+
+    /** With histograms, every frame also carries a RawFrame.histogram */
+    public FrameQueue(int capacity, int width, int height, boolean histograms) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        // One frame is being filled by the producer and one rendered by the consumer.
+        // Both rings can hold every frame, so offer() never fails.
+        int frames = capacity + 2;
+        int ringSize = Integer.highestOneBit(frames - 1) << 1;
+        mReady = new Ring(ringSize);
+        mFree = new Ring(ringSize);
+        for (int i = 0; i < frames; i++) {
+            mFree.offer(new RawFrame(width, height, histograms));
+        }
+    }
+
+    public void setDropPolicy(DropPolicy policy) {
+        mPolicy = policy;
+    }
+
+    public DropPolicy getDropPolicy() {
+        return mPolicy;
+    }
+
+    public long getPublishedFrames() {
+        return mPublished.get();
+    }
+
+    public long getDroppedFrames() {
+        return mDropped.get();
+    }
+
+    /** Producer: the first frame to fill */
+    public RawFrame acquire() {
+        return mFree.poll();
+    }
+
+    /**
+     * Producer: hand over a filled frame and get the next one to fill.
+     * Always returns a frame as long as every frame is recycled after use.
+     */
+    public RawFrame publish(RawFrame filled) {
+        RawFrame next = mFree.poll();
+        if (next == null) {
+            if (mPolicy == DropPolicy.DROP_NEWEST) {
+                mDropped.incrementAndGet();
+                return filled;
+            }
+            next = mReady.poll();
+            mDropped.incrementAndGet();
+            if (next == null) {
+                // Consumer holds every other frame, keep the new one instead
+                return filled;
+            }
+        }
+        mReady.offer(filled);
+        mPublished.incrementAndGet();
+        return next;
+    }
+
+    /** Consumer: the oldest ready frame, or null if none */
+    public RawFrame poll() {
+        return mReady.poll();
+    }
+
+    /** Consumer: return a frame obtained from poll() */
+    public void recycle(RawFrame frame) {
+        mFree.offer(frame);
+    }
+
+    public boolean isEmpty() {
+        return mReady.isEmpty();
+    }
+
+    /**
+     * Bounded ring, power of two sized, with a single offering thread. poll() claims slots with a CAS
+     * on the head, so the producer may also take back the oldest entry.
+     */
+    private static class Ring {
+        private final RawFrame[] mSlots;
+        private final int mMask;
+        private final AtomicLong mHead = new AtomicLong();
+        private final AtomicLong mTail = new AtomicLong();
+
+        Ring(int capacity) {
+            mSlots = new RawFrame[capacity];
+            mMask = capacity - 1;
+        }
+
+        boolean offer(RawFrame frame) {
+            long tail = mTail.get();
+            if (tail - mHead.get() >= mSlots.length) {
+                return false;
+            }
+            mSlots[(int) (tail & mMask)] = frame;
+            mTail.set(tail + 1);
+            return true;
+        }
+
+        RawFrame poll() {
+            while (true) {
+                long head = mHead.get();
+                if (head >= mTail.get()) {
+                    return null;
+                }
+                RawFrame frame = mSlots[(int) (head & mMask)];
+                if (mHead.compareAndSet(head, head + 1)) {
+                    return frame;
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return mHead.get() >= mTail.get();
+        }
+    }
+}
@@ -0,0 +1,310 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.flirapp;
+
+import android.os.Process;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lossless recording of decoded 14-bit frames for offline analysis.
+ *
+ * A recording is a directory holding an index file and numbered segment files
+ * of FRAMES_PER_SEGMENT frames each, so hours of data never need one huge
+ * mapping. Frames are stored either as little endian 16-bit values, row by row,
+ * or compressed with FrameCodec, starting with a key frame in every segment.
+ * Each index entry holds the frame sequence number, its capture time since the
+ * start of the recording in nanoseconds, the frame min and max, and where the
+ * frame is stored in its segment.
+ *
+ * record() only copies the frame into a FrameQueue; a background thread does
+ * the writes, so decoding never waits on storage. If the writer falls behind by
+ * more than QUEUE_CAPACITY frames, new frames are dropped and counted.
+ */
+public class FrameRecorder {
+    public static final int MAGIC = 0x464C5246;     // "FLRF"
+    public static final int VERSION = 1;
+    public static final String INDEX_FILE = "index";
+    public static final int FRAMES_PER_SEGMENT = 1024;
+
+    public static final int CODEC_RAW = 0;
+    public static final int CODEC_DELTA = 1;
+    static final int KEY_INTERVAL = 64;
+
+    // Magic, version, width, height, frames per segment, codec and the wall clock start time in milliseconds
+    static final int INDEX_HEADER_BYTES = 32;
+    // Sequence, time, min, max, offset and length in the segment
+    static final int INDEX_ENTRY_BYTES = 28;
+    private static final int INDEX_WINDOW_ENTRIES = 4096;
+
+    private static final int QUEUE_CAPACITY = 32;
+
+    private final File mDir;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mFrameBytes;
+    private final long mStartNs;
+    private final FrameCodec mCodec;            // Null for CODEC_RAW
+    private final byte[] mEncoded;
+
+    private final FrameQueue mQueue;
+    private RawFrame mFilling;                  // Producer thread only
+    private final WriterThread mWriter;
+    private volatile boolean mClosed = false;
+    private volatile boolean mFailed = false;
+
+    // Writer thread only
+    private RandomAccessFile mIndexFile;
+    private MappedByteBuffer mIndex;
+    private long mIndexWritten = 0;
+    private RandomAccessFile mSegmentFile;
+    private MappedByteBuffer mSegment;
+    private int mSegmentNumber = -1;
+    private int mSegmentFrames = 0;
+    private volatile long mFrames = 0;
+    private volatile long mBytes = 0;
+
+    private final Metrics.Counter mRecorded = Metrics.get().counter("flir.rec_frames");
+    private final Metrics.Counter mDrops = Metrics.get().counter("flir.rec_drops");
+    private final Metrics.Histogram mWriteTime = Metrics.get().histogram("flir.rec_write");
+    private long mLastDrops = 0;
+
+    /** codec is CODEC_RAW or CODEC_DELTA */
+    public FrameRecorder(File dir, int width, int height, int codec) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        mDir = dir;
+        mWidth = width;
+        mHeight = height;
+        mStartNs = System.nanoTime();
+        if (codec == CODEC_DELTA) {
+            mCodec = new FrameCodec(width * height, KEY_INTERVAL);
+            mFrameBytes = FrameCodec.maxEncodedSize(width * height);
+            mEncoded = new byte[mFrameBytes];
+        } else {
+            mCodec = null;
+            mFrameBytes = width * height * 2;
+            mEncoded = null;
+        }
+
+        mIndexFile = new RandomAccessFile(new File(dir, INDEX_FILE), "rw");
+        mIndexFile.setLength(0);
+        mapIndex(0);
+        mIndex.putInt(MAGIC);
+        mIndex.putInt(VERSION);
+        mIndex.putInt(width);
+        mIndex.putInt(height);
+        mIndex.putInt(FRAMES_PER_SEGMENT);
+        mIndex.putInt(mCodec != null ? CODEC_DELTA : CODEC_RAW);
+        mIndex.putLong(System.currentTimeMillis());
+        mIndexWritten = INDEX_HEADER_BYTES;
+
+        mQueue = new FrameQueue(QUEUE_CAPACITY, width, height);
+        mQueue.setDropPolicy(FrameQueue.DropPolicy.DROP_NEWEST);
+        mFilling = mQueue.acquire();
+        mWriter = new WriterThread();
+        mWriter.start();
+    }
+
+    /** New recording directory in parent named after prefix and the current time */
+    public static File createDir(File parent, String prefix) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US);
+        return new File(parent, prefix + "-" + format.format(new Date()));
+    }
+
+    static String segmentName(int segment) {
+        return String.format(Locale.US, "frames-%05d", segment);
+    }
+
+    public File getDir() {
+        return mDir;
+    }
+
+    /** Frames written to disk so far */
+    public long getFrameCount() {
+        return mFrames;
+    }
+
+    /** Frame bytes written so far, compressed if a codec is used */
+    public long getByteCount() {
+        return mBytes;
+    }
+
+    public long getDroppedFrames() {
+        return mQueue.getDroppedFrames();
+    }
+
+    /** Producer: queue a copy of frame for writing, never blocks */
+    public void record(RawFrame frame) {
+        if (mClosed || mFailed)
+            return;
+        RawFrame copy = mFilling;
+        System.arraycopy(frame.pixels, 0, copy.pixels, 0, copy.pixels.length);
+        copy.min = frame.min;
+        copy.max = frame.max;
+        copy.sequence = frame.sequence;
+        copy.timestampNs = frame.timestampNs;
+        mFilling = mQueue.publish(copy);
+        LockSupport.unpark(mWriter);
+
+        long drops = mQueue.getDroppedFrames();
+        if (drops != mLastDrops) {
+            mDrops.add(drops - mLastDrops);
+            mLastDrops = drops;
+        }
+    }
+
+    /** Write out every queued frame, then trim and close the files */
+    public void close() {
+        synchronized (this) {
+            if (mClosed)
+                return;
+            mClosed = true;
+        }
+        LockSupport.unpark(mWriter);
+        try {
+            mWriter.join();
+        } catch (InterruptedException e) {
+        }
+
+        try {
+            if (mSegmentFile != null) {
+                mSegmentFile.getChannel().truncate(mSegment.position());
+                mSegmentFile.close();
+            }
+            mIndexFile.getChannel().truncate(mIndexWritten);
+            mIndexFile.close();
+        } catch (IOException e) {
+            Logger.err("Failed to close " + mDir + ": " + e);
+        }
+        mSegment = null;
+        mIndex = null;
+    }
+
+    private class WriterThread extends Thread {
+        WriterThread() {
+            super("FlirRecorder");
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            while (!mFailed) {
+                RawFrame frame = mQueue.poll();
+                if (frame == null) {
+                    if (mClosed)
+                        break;
+                    LockSupport.park(this);
+                    continue;
+                }
+                try {
+                    long start = System.nanoTime();
+                    write(frame);
+                    mWriteTime.record(System.nanoTime() - start);
+                } catch (IOException e) {
+                    Logger.err("Stopped recording " + mDir + ": " + e);
+                    mFailed = true;
+                }
+                mQueue.recycle(frame);
+            }
+        }
+    }
+
+    private void write(RawFrame frame) throws IOException {
+        if (mSegment == null || mSegmentFrames == FRAMES_PER_SEGMENT) {
+            openSegment(mSegmentNumber + 1);
+        }
+        int offset = mSegment.position();
+        int length;
+        if (mCodec != null) {
+            length = mCodec.encode(frame.pixels, mEncoded, 0);
+            mSegment.put(mEncoded, 0, length);
+        } else {
+            length = mFrameBytes;
+            mSegment.asShortBuffer().put(frame.pixels);
+            mSegment.position(offset + length);
+        }
+        mSegmentFrames++;
+
+        if (mIndex.remaining() < INDEX_ENTRY_BYTES) {
+            mapIndex(mIndexWritten);
+        }
+        mIndex.putLong(frame.sequence);
+        mIndex.putLong(frame.timestampNs - mStartNs);
+        mIndex.putShort((short) frame.min);
+        mIndex.putShort((short) frame.max);
+        mIndex.putInt(offset);
+        mIndex.putInt(length);
+        mIndexWritten += INDEX_ENTRY_BYTES;
+
+        mFrames++;
+        mBytes += length;
+        mRecorded.increment();
+    }
+
+    private void openSegment(int segment) throws IOException {
+        if (mSegmentFile != null) {
+            // The mapping is sized for worst case frames, keep only what was written
+            mSegmentFile.getChannel().truncate(mSegment.position());
+            mSegmentFile.close();
+        }
+        mSegmentFile = new RandomAccessFile(new File(mDir, segmentName(segment)), "rw");
+        mSegmentFile.setLength(0);
+        mSegment = mSegmentFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                (long) FRAMES_PER_SEGMENT * mFrameBytes);
+        mSegment.order(ByteOrder.LITTLE_ENDIAN);
+        mSegmentNumber = segment;
+        mSegmentFrames = 0;
+        if (mCodec != null) {
+            // Every segment can be decoded on its own
+            mCodec.reset();
+        }
+    }
+
+    private void mapIndex(long position) throws IOException {
+        mIndex = mIndexFile.getChannel().map(FileChannel.MapMode.READ_WRITE, position,
+                (long) INDEX_WINDOW_ENTRIES * INDEX_ENTRY_BYTES);
+        mIndex.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public String toString() {
+        return "FrameRecorder " + mDir + " " + mWidth + "x" + mHeight;
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.flirapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads back a directory written by FrameRecorder.
+ *
+ * The index is mapped read-only up front; segments are mapped as frames in
+ * them are read, one at a time. The index of a recording that was never
+ * closed runs on into zero filled entries, so the recording ends at the first
+ * entry with no stored length or a sequence number that goes backwards, as
+ * well as at an entry cut short by the app dying mid-record.
+ *
+ * Compressed frames are decoded from the nearest key frame before them, so
+ * reading frames in order decodes each one only once.
+ */
+public class FrameRecording {
+    private final File mDir;
+    private final ByteBuffer mIndex;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mFramesPerSegment;
+    private final int mCodecType;
+    private final long mStartTimeMs;
+    private final int mFrameCount;
+
+    private int mSegmentNumber = -1;
+    private ByteBuffer mSegment;
+    private FrameCodec mCodec;
+    private byte[] mEncoded;
+    private int mDecoded = -1;          // Frame last decoded by mCodec
+
+    public FrameRecording(File dir) throws IOException {
+        mDir = dir;
+        mIndex = map(new File(dir, FrameRecorder.INDEX_FILE));
+        if (mIndex.capacity() < FrameRecorder.INDEX_HEADER_BYTES
+                || mIndex.getInt() != FrameRecorder.MAGIC
+                || mIndex.getInt() != FrameRecorder.VERSION) {
+            throw new IOException("Not a frame recording: " + dir);
+        }
+        mWidth = mIndex.getInt();
+        mHeight = mIndex.getInt();
+        mFramesPerSegment = mIndex.getInt();
+        mCodecType = mIndex.getInt();
+        mStartTimeMs = mIndex.getLong();
+        mFrameCount = countFrames(mIndex);
+        if (mCodecType == FrameRecorder.CODEC_DELTA) {
+            mCodec = new FrameCodec(mWidth * mHeight, FrameRecorder.KEY_INTERVAL);
+            mEncoded = new byte[FrameCodec.maxEncodedSize(mWidth * mHeight)];
+        } else if (mCodecType != FrameRecorder.CODEC_RAW) {
+            throw new IOException("Unknown codec " + mCodecType + ": " + dir);
+        }
+    }
+
+    public File getDir() {
+        return mDir;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /** Wall clock time the recording was started, System.currentTimeMillis() */
+    public long getStartTimeMillis() {
+        return mStartTimeMs;
+    }
+
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    public long getSequence(int frame) {
+        return mIndex.getLong(entry(frame));
+    }
+
+    /** Capture time of frame since the start of the recording */
+    public long getTimeNanos(int frame) {
+        return mIndex.getLong(entry(frame) + 8);
+    }
+
+    public int getMin(int frame) {
+        return mIndex.getShort(entry(frame) + 16);
+    }
+
+    public int getMax(int frame) {
+        return mIndex.getShort(entry(frame) + 18);
+    }
+
+    /** Bytes frame takes up in its segment */
+    public int getStoredLength(int frame) {
+        return mIndex.getInt(entry(frame) + 24);
+    }
+
+    /** Copy frame into dst, which must hold width * height values */
+    public void readFrame(int frame, short[] dst) throws IOException {
+        if (mCodec == null) {
+            ByteBuffer segment = segmentOf(frame);
+            segment.position(mIndex.getInt(entry(frame) + 20));
+            segment.asShortBuffer().get(dst, 0, mWidth * mHeight);
+            return;
+        }
+
+        // Back to a key frame, or to the frame after the one decoded last
+        int start = frame;
+        while (start != mDecoded + 1 && start % mFramesPerSegment != 0 && !isKeyFrame(start)) {
+            start--;
+        }
+        for (int i = start; i <= frame; i++) {
+            ByteBuffer segment = segmentOf(i);
+            int entry = entry(i);
+            int length = mIndex.getInt(entry + 24);
+            if (length > mEncoded.length) {
+                throw new IOException("Corrupt frame " + i + " in " + mDir);
+            }
+            segment.position(mIndex.getInt(entry + 20));
+            segment.get(mEncoded, 0, length);
+            if (!mCodec.decode(mEncoded, 0, length, dst)) {
+                mDecoded = -1;
+                throw new IOException("Corrupt frame " + i + " in " + mDir);
+            }
+            mDecoded = i;
+        }
+    }
+
+    private boolean isKeyFrame(int frame) throws IOException {
+        ByteBuffer segment = segmentOf(frame);
+        return segment.get(mIndex.getInt(entry(frame) + 20)) == FrameCodec.KEY_FRAME;
+    }
+
+    private ByteBuffer segmentOf(int frame) throws IOException {
+        int segment = checkFrame(frame) / mFramesPerSegment;
+        if (segment != mSegmentNumber) {
+            mSegment = map(new File(mDir, FrameRecorder.segmentName(segment)));
+            mSegmentNumber = segment;
+        }
+        return mSegment;
+    }
+
+    private int entry(int frame) {
+        return FrameRecorder.INDEX_HEADER_BYTES + checkFrame(frame) * FrameRecorder.INDEX_ENTRY_BYTES;
+    }
+
+    private int checkFrame(int frame) {
+        if (frame < 0 || frame >= mFrameCount) {
+            throw new IndexOutOfBoundsException("frame " + frame + " of " + mFrameCount);
+        }
+        return frame;
+    }
+
+    private static int countFrames(ByteBuffer index) {
+        int entries = (index.capacity() - FrameRecorder.INDEX_HEADER_BYTES)
+                / FrameRecorder.INDEX_ENTRY_BYTES;
+        long last = Long.MIN_VALUE;
+        for (int i = 0; i < entries; i++) {
+            int entry = FrameRecorder.INDEX_HEADER_BYTES + i * FrameRecorder.INDEX_ENTRY_BYTES;
+            long sequence = index.getLong(entry);
+            if (index.getInt(entry + 24) <= 0 || sequence < last) {
+                return i;
+            }
+            last = sequence;
+        }
+        return entries;
+    }
+
+    private static ByteBuffer map(File path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Too large: " + path);
+            }
+            ByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return map.order(ByteOrder.LITTLE_ENDIAN);
+        } finally {
+            file.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FrameRecording " + mDir + " " + mWidth + "x" + mHeight + ", " + mFrameCount + " frames";
+    }
+}
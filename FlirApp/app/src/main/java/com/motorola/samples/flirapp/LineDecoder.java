@@ -0,0 +1,457 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.flirapp;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Streaming decoder for VoSPI line packets.
+ *
+ * Each packet is a 2 byte packet id, a 2 byte CRC and one SensorGeometry
+ * packetPixels run of 16-bit pixel words, all big endian. Packets that lie
+ * whole in the buffer handed to decode() are validated and decoded in place,
+ * which for RawDevice's direct read buffer means straight from the bytes the
+ * kernel wrote. Only a packet split between reads is gathered into a small
+ * line buffer that carries over between calls. On a CRC failure decoding
+ * slips by one byte so the decoder realigns even if bytes were lost mid-packet.
+ *
+ * Cores that send a frame in several segments only say which segment a packet
+ * belongs to in packet SEGMENT_ID_PACKET. Earlier packets are written where the
+ * expected segment goes and moved only if the number says otherwise, so each
+ * pixel is still copied once. A frame is delivered once all of its segments
+ * arrived in order; segments numbered 0 are discarded, as the core asks.
+ *
+ * The pass that masks the pixel words also tracks the frame min/max and, when
+ * a histogram is set, counts every value into it, so nothing downstream has to
+ * scan the frame again to find its range or distribution.
+ */
+public class LineDecoder {
+    private static final int HEADER_BYTES = SensorGeometry.HEADER_BYTES;
+    private static final int DISCARD_MASK = 0x0F00;
+    private static final int LINE_ID_MASK = 0x0FFF;
+    private static final int SEGMENT_SHIFT = 12;
+    private static final int SEGMENT_MASK = 0x7;
+    private static final int PIXEL_MASK = 0x3FFF;
+
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        // CRC-16-CCITT, x^16 + x^12 + x^5 + 1
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            CRC_TABLE[i] = crc & 0xFFFF;
+        }
+    }
+
+    public interface Listener {
+        /** Called on the decoding thread; frame is reused unless replaced with setFrame() */
+        public void onFrame(short[] frame, int min, int max);
+    }
+
+    private final SensorGeometry mGeometry;
+    private final int mPacketPixels;
+    private final int mPackets;             // Packets per segment
+    private final int mSegments;
+    private final int mSegmentPixels;
+    private final int mLineBytes;
+
+    private final byte[] mLine;
+    private final ByteBuffer mLineBuffer;
+    private int mLineLen = 0;
+    private byte[] mWrapped;                // Array behind mWrappedBuffer
+    private ByteBuffer mWrappedBuffer;
+    private boolean mAligned = false;
+
+    private short[] mFrame;
+    private int[] mHistogram;
+    private int mNextLine = 0;              // Next packet of the current segment
+    private int mSegment = 0;               // Segment being filled, a guess until its number is seen
+    private int mExpectedSegment = 0;
+    private int mSegmentsDone = 0;          // Bit per segment of the current frame
+    private boolean mSkipSegment = false;
+    private int mSegMin = PIXEL_MASK;
+    private int mSegMax = 0;
+    private int mMin = PIXEL_MASK;
+    private int mMax = 0;
+    private long mSegmentStartNs = 0;
+    private long mFrameStartNs = 0;
+
+    private boolean mCrcCheck = true;
+    private int mResyncs = 0;
+    private int mCrcErrors = 0;
+    private int mDiscards = 0;
+    private int mSkippedSegments = 0;
+
+    private Listener mListener;
+
+    /** Single segment sensor with one packet per row */
+    public LineDecoder(int width, int height, Listener listener) {
+        this(new SensorGeometry(width, height, width, 1), listener);
+    }
+
+    public LineDecoder(SensorGeometry geometry, Listener listener) {
+        mGeometry = geometry;
+        mPacketPixels = geometry.packetPixels;
+        mPackets = geometry.packetsPerSegment;
+        mSegments = geometry.segments;
+        mSegmentPixels = mPackets * mPacketPixels;
+        mLineBytes = geometry.packetBytes;
+        mLine = new byte[mLineBytes];
+        mLineBuffer = ByteBuffer.wrap(mLine);
+        mFrame = new short[geometry.getPixels()];
+        mListener = listener;
+    }
+
+    /** Decode subsequent packets into frame, which must hold width * height values */
+    public void setFrame(short[] frame) {
+        mFrame = frame;
+    }
+
+    /**
+     * Count the values of subsequent frames into histogram, which must have
+     * Colormap.RAW_RANGE bins and be all zero, or stop counting with null.
+     * Counts of a completed frame are left for the listener, who must set a
+     * zeroed histogram before the next frame; a frame given up part way
+     * through leaves the histogram all zero again.
+     */
+    public void setHistogram(int[] histogram) {
+        mHistogram = histogram;
+    }
+
+    public void setCrcCheck(boolean enabled) {
+        mCrcCheck = enabled;
+    }
+
+    public SensorGeometry getGeometry() {
+        return mGeometry;
+    }
+
+    public int getLineBytes() {
+        return mLineBytes;
+    }
+
+    public int getResyncCount() {
+        return mResyncs;
+    }
+
+    public int getCrcErrorCount() {
+        return mCrcErrors;
+    }
+
+    public int getDiscardCount() {
+        return mDiscards;
+    }
+
+    /** Segments the core marked as not part of a frame */
+    public int getSkippedSegmentCount() {
+        return mSkippedSegments;
+    }
+
+    /** System.nanoTime() when the first packet of the last frame was decoded */
+    public long getFrameStartNanos() {
+        return mFrameStartNs;
+    }
+
+    /** Drop any partial packet or frame, e.g. when the stream restarts */
+    public void reset() {
+        mLineLen = 0;
+        mAligned = false;
+        restartFrame();
+    }
+
+    public void decode(byte[] data, int offset, int len) {
+        if (data != mWrapped) {
+            mWrapped = data;
+            mWrappedBuffer = ByteBuffer.wrap(data);
+        }
+        mWrappedBuffer.limit(offset + len).position(offset);
+        decode(mWrappedBuffer);
+    }
+
+    /**
+     * Decode data from its position to its limit, which it is left at. The
+     * buffer must be in big endian order, the ByteBuffer default.
+     */
+    public void decode(ByteBuffer data) {
+        if (data.order() != ByteOrder.BIG_ENDIAN) {
+            throw new IllegalArgumentException("VoSPI data is big endian");
+        }
+        int pos = data.position();
+        int end = data.limit();
+        while (pos < end) {
+            if (mLineLen == 0 && end - pos >= mLineBytes) {
+                // A whole packet, no need to gather it first
+                if (processLine(data, pos)) {
+                    pos += mLineBytes;
+                } else {
+                    pos++;
+                    slipped();
+                }
+                continue;
+            }
+
+            int n = Math.min(mLineBytes - mLineLen, end - pos);
+            data.position(pos);
+            data.get(mLine, mLineLen, n);
+            mLineLen += n;
+            pos += n;
+
+            if (mLineLen == mLineBytes) {
+                if (processLine(mLineBuffer, 0)) {
+                    mLineLen = 0;
+                } else {
+                    slip();
+                }
+            }
+        }
+        data.position(end);
+    }
+
+    // The packet at offset in buf, false if it is not one and decoding must slip
+    private boolean processLine(ByteBuffer buf, int offset) {
+        int id = ((buf.get(offset) & 0xFF) << 8) | (buf.get(offset + 1) & 0xFF);
+
+        if ((id & DISCARD_MASK) == DISCARD_MASK) {
+            if (mAligned) {
+                mDiscards++;
+                return true;
+            }
+            // Only trust a discard header on a known packet boundary
+            return false;
+        }
+
+        int line = id & LINE_ID_MASK;
+        if (mCrcCheck) {
+            int crc = ((buf.get(offset + 2) & 0xFF) << 8) | (buf.get(offset + 3) & 0xFF);
+            if (crc != packetCrc(buf, offset, mLineBytes)) {
+                mCrcErrors++;
+                return false;
+            }
+        } else if (line >= mPackets) {
+            // Cannot be a packet of this sensor, the stream is out of alignment
+            return false;
+        }
+        mAligned = true;
+
+        if (line != mNextLine) {
+            if (mNextLine != 0) {
+                Logger.warn("Unexpected line id:" + line + " expected:" + mNextLine);
+                mResyncs++;
+                restartFrame();
+            }
+            if (line != 0) {
+                // Wait for the start of the next segment
+                return true;
+            }
+        }
+
+        if (line == 0) {
+            mSegment = mExpectedSegment;
+            mSkipSegment = false;
+            mSegMin = PIXEL_MASK;
+            mSegMax = 0;
+            mSegmentStartNs = System.nanoTime();
+        }
+        if (mSegments > 1 && line == SensorGeometry.SEGMENT_ID_PACKET) {
+            checkSegment((id >> SEGMENT_SHIFT) & SEGMENT_MASK);
+        }
+
+        if (!mSkipSegment) {
+            copyPacket(buf, offset + HEADER_BYTES, (mSegment * mPackets + line) * mPacketPixels);
+        }
+
+        mNextLine++;
+        if (mNextLine == mPackets) {
+            mNextLine = 0;
+            finishSegment();
+        }
+        return true;
+    }
+
+    // Copy, mask, range and count in one pass over the packet's pixel words
+    private void copyPacket(ByteBuffer buf, int offset, int base) {
+        short[] frame = mFrame;
+        int[] hist = mHistogram;
+        int end = base + mPacketPixels;
+        int min = mSegMin;
+        int max = mSegMax;
+        if (hist != null) {
+            for (int i = base; i < end; i++, offset += 2) {
+                int val = buf.getShort(offset) & PIXEL_MASK;
+                frame[i] = (short) val;
+                hist[val]++;
+                if (val > max)
+                    max = val;
+                if (val < min)
+                    min = val;
+            }
+        } else {
+            for (int i = base; i < end; i++, offset += 2) {
+                int val = buf.getShort(offset) & PIXEL_MASK;
+                frame[i] = (short) val;
+                if (val > max)
+                    max = val;
+                if (val < min)
+                    min = val;
+            }
+        }
+        mSegMin = min;
+        mSegMax = max;
+    }
+
+    // number is the 1-based segment number the core put in this packet
+    private void checkSegment(int number) {
+        int segment = number - 1;
+        if (segment == mSegment) {
+            return;
+        }
+        // Packets so far were written where another segment goes
+        int written = SensorGeometry.SEGMENT_ID_PACKET * mPacketPixels;
+        if (number == 0 || number > mSegments) {
+            uncount(mSegment * mSegmentPixels, written);
+            mSkipSegment = true;
+            mSkippedSegments++;
+        } else if (segment == 0) {
+            // A new frame starts, drop what there is of the previous one
+            dropSegmentsDone();
+            System.arraycopy(mFrame, mSegment * mSegmentPixels, mFrame, 0, written);
+            mSegment = 0;
+        } else {
+            // Out of order, this frame cannot be completed
+            uncount(mSegment * mSegmentPixels, written);
+            dropSegmentsDone();
+            mSkipSegment = true;
+        }
+    }
+
+    private void finishSegment() {
+        if (mSkipSegment) {
+            mSkipSegment = false;
+            return;
+        }
+        if (mSegment == 0) {
+            mFrameStartNs = mSegmentStartNs;
+        }
+        mSegmentsDone |= 1 << mSegment;
+        if (mSegMin < mMin)
+            mMin = mSegMin;
+        if (mSegMax > mMax)
+            mMax = mSegMax;
+        mExpectedSegment = (mSegment + 1) % mSegments;
+
+        if (mSegment == mSegments - 1) {
+            if (mSegmentsDone == (1 << mSegments) - 1) {
+                if (mListener != null) {
+                    mListener.onFrame(mFrame, mMin, mMax);
+                }
+                // Counts now belong to the listener
+                mSegmentsDone = 0;
+            } else {
+                mResyncs++;
+                dropSegmentsDone();
+            }
+            mMin = PIXEL_MASK;
+            mMax = 0;
+        }
+    }
+
+    // Give up the current segment and the frame it belongs to
+    private void restartFrame() {
+        if (mNextLine != 0 && !mSkipSegment) {
+            uncount(mSegment * mSegmentPixels, mNextLine * mPacketPixels);
+        }
+        dropSegmentsDone();
+        mNextLine = 0;
+        mSkipSegment = false;
+        mExpectedSegment = 0;
+        mMin = PIXEL_MASK;
+        mMax = 0;
+    }
+
+    private void dropSegmentsDone() {
+        for (int s = 0; s < mSegments; s++) {
+            if ((mSegmentsDone & (1 << s)) != 0) {
+                uncount(s * mSegmentPixels, mSegmentPixels);
+            }
+        }
+        mSegmentsDone = 0;
+        mMin = PIXEL_MASK;
+        mMax = 0;
+    }
+
+    // Take pixels that will not be delivered back out of the histogram
+    private void uncount(int base, int count) {
+        int[] hist = mHistogram;
+        if (hist == null)
+            return;
+        for (int i = base; i < base + count; i++) {
+            hist[mFrame[i]]--;
+        }
+    }
+
+    // Drop the first gathered byte and wait for one more, to find the next packet boundary
+    private void slip() {
+        System.arraycopy(mLine, 1, mLine, 0, mLineBytes - 1);
+        mLineLen = mLineBytes - 1;
+        slipped();
+    }
+
+    private void slipped() {
+        mAligned = false;
+        if (mNextLine != 0) {
+            mResyncs++;
+        }
+        restartFrame();
+    }
+
+    /** CRC over the whole packet with the top id nibble and the CRC field zeroed */
+    static int packetCrc(byte[] packet, int offset, int length) {
+        return packetCrc(ByteBuffer.wrap(packet), offset, length);
+    }
+
+    static int packetCrc(ByteBuffer packet, int offset, int length) {
+        int crc = 0;
+        crc = crcByte(crc, packet.get(offset) & 0x0F);
+        crc = crcByte(crc, packet.get(offset + 1) & 0xFF);
+        crc = crcByte(crc, 0);
+        crc = crcByte(crc, 0);
+        for (int i = offset + HEADER_BYTES; i < offset + length; i++) {
+            crc = crcByte(crc, packet.get(i) & 0xFF);
+        }
+        return crc;
+    }
+
+    private static int crcByte(int crc, int b) {
+        return ((crc << 8) ^ CRC_TABLE[((crc >> 8) ^ b) & 0xFF]) & 0xFFFF;
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.flirapp;
+
+import android.os.ParcelFileDescriptor;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Local socketpair standing in for a Mod. The far end is driven by a FakeMod
+ * running the given script, so everything above the descriptor runs unchanged.
+ */
+public class LoopbackTransport implements RawTransport {
+    private final ParcelFileDescriptor mAppEnd;
+    private final ParcelFileDescriptor mModEnd;
+    private final FakeMod mMod;
+
+    public LoopbackTransport(FakeMod.Script script) throws IOException {
+        ParcelFileDescriptor[] pair = ParcelFileDescriptor.createSocketPair();
+        mAppEnd = pair[0];
+        mModEnd = pair[1];
+
+        FileDescriptor fd = mModEnd.getFileDescriptor();
+        mMod = new FakeMod(new FileInputStream(fd), new FileOutputStream(fd), script);
+        mMod.start();
+    }
+
+    public FakeMod getMod() {
+        return mMod;
+    }
+
+    @Override
+    public FileDescriptor getFileDescriptor() {
+        return mAppEnd.getFileDescriptor();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Closing our end gives the fake mod EOF, then tear down its side
+        mAppEnd.close();
+        mMod.stop();
+        mModEnd.close();
+    }
+
+    @Override
+    public String toString() {
+        return "LoopbackTransport " + mMod;
+    }
+}
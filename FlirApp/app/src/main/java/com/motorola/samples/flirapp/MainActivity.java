@@ -38,10 +38,14 @@ import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.os.Handler;
 import android.os.IBinder;
+import android.os.Message;
 import android.os.RemoteException;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.Button;
 import android.widget.ImageView;
 
@@ -51,6 +55,10 @@ import com.motorola.mod.ModInterfaceDelegation;
 import com.motorola.mod.ModManager;
 import com.motorola.mod.ModProtocol;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.List;
 
 public class MainActivity extends AppCompatActivity {
@@ -66,11 +74,16 @@ public class MainActivity extends AppCompatActivity {
     private boolean mStarted = false;
 
     private RawDevice mRawDevice;
+    private StreamRecorder mRecorder;
+    private FrameRecorder mFrameRecorder;
 
     private static final int REQUEST_RAW_PERMISSION = 100;
+    private static final int SIMULATED_FPS = 9;
     private enum PERMCODE {PERM_OK, PERM_CHECKING, PERM_NG};
 
     private Bitmap mLastImage;
+    private MetricsOverlay mMetricsOverlay;
+    private RegionOverlay mRegionOverlay;
 
     private ServiceConnection mConnection = new ServiceConnection() {
 
@@ -117,27 +130,69 @@ public class MainActivity extends AppCompatActivity {
         }
     };
 
+    private static final int MSG_IMAGE_UPDATED = 1;
+
+    // Render worker to UI thread, setImageBitmap() to the view tree drawing,
+    // and the first line of the frame arriving to it being drawn
+    private final Metrics.Histogram mDeliverTime = Metrics.get().histogram("flir.deliver");
+    private final Metrics.Histogram mDrawTime = Metrics.get().histogram("flir.draw");
+    private final Metrics.Histogram mLatency = Metrics.get().histogram("flir.latency");
+    private final Metrics.Counter mDisplayed = Metrics.get().counter("flir.displayed");
+    private long mShownNs = 0;          // UI thread, 0 once the last bitmap was drawn
+    private long mShownCaptureNs = 0;
+
+    private ViewTreeObserver.OnDrawListener mDrawListener = new ViewTreeObserver.OnDrawListener() {
+        @Override
+        public void onDraw() {
+            if (mShownNs == 0)
+                return;
+            long now = System.nanoTime();
+            mDrawTime.record(now - mShownNs);
+            mLatency.record(now - mShownCaptureNs);
+            mDisplayed.increment();
+            mShownNs = 0;
+        }
+    };
+
+    // Pooled messages rather than a Runnable per frame, so delivery does not allocate
+    private Handler mImageHandler = new Handler() {
+        @Override
+        public void handleMessage(Message msg) {
+            switch (msg.what) {
+                case MSG_IMAGE_UPDATED:
+                    Bitmap bitmap = (Bitmap) msg.obj;
+                    if (mImage == null) {
+                        mFlirImage.releaseBitmap(bitmap);
+                        break;
+                    }
+                    BitmapPool pool = mFlirImage.getBitmapPool();
+                    long now = System.nanoTime();
+                    mDeliverTime.record(now - pool.getReadyTime(bitmap));
+                    mShownNs = now;
+                    mShownCaptureNs = pool.getCaptureTime(bitmap);
+                    mImage.setImageBitmap(bitmap);
+                    if (mLastImage != null)
+                        mFlirImage.releaseBitmap(mLastImage);
+                    mLastImage = bitmap;
+                    break;
+                default:
+                    super.handleMessage(msg);
+                    break;
+            }
+        }
+    };
+
     private FlirImage.UpdateListener mUpdateListener = new FlirImage.UpdateListener() {
         @Override
-        public void onImageUpdated(final Bitmap bitmap) {
+        public void onImageUpdated(Bitmap bitmap) {
             if (bitmap != null) {
-                mHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        if (mImage != null) {
-                            Logger.dbg("Image Updated");
-                            mImage.setImageBitmap(bitmap);
-                            if (mLastImage != null)
-                                mLastImage.recycle();
-                            mLastImage = bitmap;
-                        }
-                    }
-                });
+                mImageHandler.obtainMessage(MSG_IMAGE_UPDATED, bitmap).sendToTarget();
             }
         }
     };
 
-    private FlirImage mFlirImage = new FlirImage(mUpdateListener);
+    // Lepton 3 cores need SensorGeometry.LEPTON_3
+    private FlirImage mFlirImage = new FlirImage(mUpdateListener, SensorGeometry.LEPTON_2);
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -148,6 +203,7 @@ public class MainActivity extends AppCompatActivity {
 
         mButton = (Button)this.findViewById(R.id.button);
         mImage = (ImageView)this.findViewById(R.id.imageView);
+        mImage.getViewTreeObserver().addOnDrawListener(mDrawListener);
 
         mButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -161,6 +217,17 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
+        // Tap the image to cycle through the available palettes
+        mImage.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                Colormap.Palette[] palettes = Colormap.Palette.values();
+                int next = (mFlirImage.getPalette().ordinal() + 1) % palettes.length;
+                mFlirImage.setPalette(palettes[next]);
+                Logger.dbg("Palette: " + palettes[next]);
+            }
+        });
+
         Intent service = new Intent(ModManager.ACTION_BIND_MANAGER);
         service.setComponent(ModManager.MOD_SERVICE_NAME);
         mContext.bindService(service, mConnection, Context.BIND_AUTO_CREATE);
@@ -170,6 +237,19 @@ public class MainActivity extends AppCompatActivity {
 
         mContext.registerReceiver(mReceiver, filter, ModManager.PERMISSION_MOD_INTERNAL, null);
 
+        mMetricsOverlay = new MetricsOverlay(this);
+
+        SensorGeometry geometry = mFlirImage.getGeometry();
+        mRegionOverlay = (RegionOverlay) findViewById(R.id.regionOverlay);
+        mRegionOverlay.setSensorSize(geometry.width, geometry.height);
+        mRegionOverlay.setCallback(new RegionOverlay.Callback() {
+            @Override
+            public void onRegionsChanged(RegionStats.Region[] regions) {
+                mFlirImage.setRegions(regions);
+            }
+        });
+        mRegionOverlay.setRadiometry(mFlirImage.getRadiometry());
+        mFlirImage.setRegionListener(mRegionOverlay);
         updateUi();
     }
 
@@ -177,6 +257,12 @@ public class MainActivity extends AppCompatActivity {
     public void onDestroy() {
         mContext.unregisterReceiver(mReceiver);
         mContext.unbindService(mConnection);
+        if (mRecorder != null) {
+            stopRecording();
+        }
+        if (mFrameRecorder != null) {
+            stopFrameRecording();
+        }
         super.onDestroy();
     }
 
@@ -196,18 +282,164 @@ public class MainActivity extends AppCompatActivity {
     public void onResume() {
         super.onResume();
         if (mStarted) {
+            mFlirImage.start();
             mRawDevice.startReading();
         }
+        mMetricsOverlay.resume();
     }
 
     @Override
     public void onPause() {
         if (mStarted) {
             mRawDevice.stopReading();
+            mFlirImage.stop();
         }
+        mMetricsOverlay.pause();
         super.onPause();
     }
 
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_main, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_metrics) {
+            boolean show = !mMetricsOverlay.isVisible();
+            mMetricsOverlay.setVisible(show);
+            item.setChecked(show);
+            return true;
+        }
+        if (item.getItemId() == R.id.action_add_region) {
+            mRegionOverlay.addRegion();
+            return true;
+        }
+        if (item.getItemId() == R.id.action_clear_regions) {
+            mRegionOverlay.clearRegions();
+            return true;
+        }
+        if (item.getItemId() == R.id.action_equalize) {
+            boolean equalize = !mFlirImage.isEqualize();
+            mFlirImage.setEqualize(equalize);
+            item.setChecked(equalize);
+            return true;
+        }
+        if (item.getItemId() == R.id.action_record) {
+            if (mRecorder == null) {
+                startRecording();
+            } else {
+                stopRecording();
+            }
+            item.setChecked(mRecorder != null);
+            return true;
+        }
+        if (item.getItemId() == R.id.action_record_frames) {
+            if (mFrameRecorder == null) {
+                startFrameRecording();
+            } else {
+                stopFrameRecording();
+            }
+            item.setChecked(mFrameRecorder != null);
+            return true;
+        }
+        if (item.getItemId() == R.id.action_replay) {
+            startReplay();
+            return true;
+        }
+        if (item.getItemId() == R.id.action_simulate) {
+            startSimulation();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    // Capture the raw stream to app storage, fetch it with adb pull to share
+    private void startRecording() {
+        try {
+            File path = StreamRecorder.createFile(getExternalFilesDir(null), "flir");
+            mRecorder = new StreamRecorder(path);
+        } catch (IOException e) {
+            Logger.err("Cannot start recording: " + e);
+            return;
+        }
+        if (mRawDevice != null) {
+            mRawDevice.setRecorder(mRecorder);
+        }
+        Logger.dbg("Recording to " + mRecorder.getPath());
+    }
+
+    private void stopRecording() {
+        if (mRawDevice != null) {
+            mRawDevice.setRecorder(null);
+        }
+        mRecorder.close();
+        Logger.dbg("Recorded " + mRecorder.getChunkCount() + " reads to " + mRecorder.getPath());
+        mRecorder = null;
+    }
+
+    // Keep the decoded 14-bit frames, which the colorized bitmaps lose
+    private void startFrameRecording() {
+        File dir = FrameRecorder.createDir(getExternalFilesDir(null), "flir-frames");
+        try {
+            SensorGeometry geometry = mFlirImage.getGeometry();
+            mFrameRecorder = new FrameRecorder(dir, geometry.width, geometry.height,
+                    FrameRecorder.CODEC_DELTA);
+        } catch (IOException e) {
+            Logger.err("Cannot start frame recording: " + e);
+            return;
+        }
+        mFlirImage.setFrameRecorder(mFrameRecorder);
+        Logger.dbg("Recording frames to " + dir);
+    }
+
+    private void stopFrameRecording() {
+        mFlirImage.setFrameRecorder(null);
+        mFrameRecorder.close();
+        Logger.dbg("Recorded " + mFrameRecorder.getFrameCount() + " frames, "
+                + mFrameRecorder.getByteCount() + " bytes to " + mFrameRecorder.getDir()
+                + ", dropped " + mFrameRecorder.getDroppedFrames());
+        mFrameRecorder = null;
+    }
+
+    // Play the newest recording through the normal decoding path, no Mod needed
+    private void startReplay() {
+        File path = StreamRecording.findLatest(getExternalFilesDir(null));
+        if (path == null) {
+            Logger.err("No recording to replay");
+            return;
+        }
+        stopRawReading();
+        try {
+            startRawDevice(new RawDevice(new ReplayTransport(path, 1, true)));
+        } catch (IOException e) {
+            Logger.err("Cannot replay " + path + ": " + e);
+        }
+        updateUi();
+    }
+
+    // Stream synthetic frames from an in-process fake sensor, no Mod needed
+    private void startSimulation() {
+        stopRawReading();
+        try {
+            FlirStreamScript script = new FlirStreamScript(mFlirImage.getGeometry(), SIMULATED_FPS);
+            startRawDevice(new RawDevice(new LoopbackTransport(script)));
+        } catch (IOException e) {
+            Logger.err("Cannot start simulated sensor: " + e);
+        }
+        updateUi();
+    }
+
+    // Raw channel metrics are included in: adb shell dumpsys activity <package>
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        writer.print(prefix);
+        writer.println("Metrics:");
+        Metrics.get().dump(prefix + "  ", writer);
+    }
+
     private void findModDevice() {
         if (mModMgr == null)
             return;
@@ -251,6 +483,7 @@ public class MainActivity extends AppCompatActivity {
         if (mRawDevice != null) {
             mRawDevice.stopReading();
         }
+        mFlirImage.stop();
         mStarted = false;
     }
 
@@ -295,10 +528,16 @@ public class MainActivity extends AppCompatActivity {
     }
 
     public void startRawDevice() {
-        mRawDevice = new RawDevice(mModMgr, mModDel);
+        startRawDevice(new RawDevice(mModMgr, mModDel));
+    }
+
+    private void startRawDevice(RawDevice device) {
+        mRawDevice = device;
 
         if (mRawDevice != null) {
             mRawDevice.setCallback(mFlirImage);
+            mRawDevice.setRecorder(mRecorder);
+            mFlirImage.start();
             mRawDevice.startReading();
             mStarted = true;
         }
@@ -0,0 +1,308 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.flirapp;
+
+import android.os.SystemClock;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide registry of raw channel counters, gauges and latency histograms.
+ *
+ * Metrics are looked up by name once, when their owner is created, and then
+ * updated from the hot path without locks or allocation. report() renders
+ * everything as text, with per-second rates over the time since the previous
+ * report, for the in-app overlay and for dumpsys.
+ */
+public class Metrics {
+    private static final Metrics INSTANCE = new Metrics();
+
+    public static Metrics get() {
+        return INSTANCE;
+    }
+
+    private final List<Counter> mCounters = new ArrayList<>();
+    private final List<Gauge> mGauges = new ArrayList<>();
+    private final List<Histogram> mHistograms = new ArrayList<>();
+    private long mLastReport = SystemClock.elapsedRealtime();
+
+    public synchronized Counter counter(String name) {
+        for (Counter c : mCounters) {
+            if (c.mName.equals(name)) {
+                return c;
+            }
+        }
+        Counter c = new Counter(name);
+        mCounters.add(c);
+        return c;
+    }
+
+    public synchronized Gauge gauge(String name) {
+        for (Gauge g : mGauges) {
+            if (g.mName.equals(name)) {
+                return g;
+            }
+        }
+        Gauge g = new Gauge(name);
+        mGauges.add(g);
+        return g;
+    }
+
+    public synchronized Histogram histogram(String name) {
+        for (Histogram h : mHistograms) {
+            if (h.mName.equals(name)) {
+                return h;
+            }
+        }
+        Histogram h = new Histogram(name);
+        mHistograms.add(h);
+        return h;
+    }
+
+    public synchronized void reset() {
+        for (Counter c : mCounters) {
+            c.reset();
+        }
+        for (Gauge g : mGauges) {
+            g.reset();
+        }
+        for (Histogram h : mHistograms) {
+            h.reset();
+        }
+        mLastReport = SystemClock.elapsedRealtime();
+    }
+
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        report(sb);
+        return sb.toString();
+    }
+
+    /** Append one line per metric; rates cover the time since the previous report */
+    public synchronized void report(StringBuilder sb) {
+        long now = SystemClock.elapsedRealtime();
+        long elapsed = Math.max(1, now - mLastReport);
+        mLastReport = now;
+
+        for (Counter c : mCounters) {
+            long value = c.get();
+            long delta = value - c.mReported;
+            c.mReported = value;
+            sb.append(c.mName).append(": ").append(value)
+                    .append(" (").append(delta * 1000 / elapsed).append("/s)\n");
+        }
+        for (Gauge g : mGauges) {
+            sb.append(g.mName).append(": ").append(g.get())
+                    .append(" max ").append(g.getMax()).append('\n');
+        }
+        for (Histogram h : mHistograms) {
+            sb.append(h.mName).append(" us: n=").append(h.getCount());
+            if (h.getCount() > 0) {
+                sb.append(" p50=").append(h.percentile(50) / 1000)
+                        .append(" p99=").append(h.percentile(99) / 1000)
+                        .append(" max=").append(h.getMax() / 1000);
+            }
+            sb.append('\n');
+        }
+    }
+
+    /** For Activity.dump(), e.g. adb shell dumpsys activity <package> */
+    public void dump(String prefix, PrintWriter writer) {
+        String report = report();
+        int start = 0;
+        int end;
+        while ((end = report.indexOf('\n', start)) >= 0) {
+            writer.print(prefix);
+            writer.println(report.substring(start, end));
+            start = end + 1;
+        }
+    }
+
+    public static class Counter {
+        final String mName;
+        private final AtomicLong mValue = new AtomicLong();
+        private long mReported = 0;      // Guarded by the registry
+
+        Counter(String name) {
+            mName = name;
+        }
+
+        public void increment() {
+            mValue.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            mValue.addAndGet(delta);
+        }
+
+        public long get() {
+            return mValue.get();
+        }
+
+        void reset() {
+            mValue.set(0);
+            mReported = 0;
+        }
+    }
+
+    /** Current level of something, e.g. a queue depth, and the highest seen */
+    public static class Gauge {
+        final String mName;
+        private final AtomicLong mValue = new AtomicLong();
+        private final AtomicLong mMax = new AtomicLong();
+
+        Gauge(String name) {
+            mName = name;
+        }
+
+        public void set(long v) {
+            mValue.set(v);
+            updateMax(mMax, v);
+        }
+
+        public long get() {
+            return mValue.get();
+        }
+
+        public long getMax() {
+            return mMax.get();
+        }
+
+        void reset() {
+            mValue.set(0);
+            mMax.set(0);
+        }
+    }
+
+    /**
+     * Log-linear histogram of non-negative values, normally nanoseconds.
+     *
+     * Each power of two is split into 8 buckets, so a recorded value is off by
+     * at most 12.5% from the one reported, over the whole long range, with a
+     * fixed 4KB of buckets and no allocation when recording.
+     */
+    public static class Histogram {
+        private static final int SUB_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+        final String mName;
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mSum = new AtomicLong();
+        private final AtomicLong mMax = new AtomicLong();
+
+        Histogram(String name) {
+            mName = name;
+        }
+
+        public void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            mBuckets.incrementAndGet(bucketOf(value));
+            mCount.incrementAndGet();
+            mSum.addAndGet(value);
+            updateMax(mMax, value);
+        }
+
+        /** Record the time since start, taken from System.nanoTime() */
+        public void recordSince(long start) {
+            record(System.nanoTime() - start);
+        }
+
+        public long getCount() {
+            return mCount.get();
+        }
+
+        public long getMax() {
+            return mMax.get();
+        }
+
+        public long getMean() {
+            long n = mCount.get();
+            return n == 0 ? 0 : mSum.get() / n;
+        }
+
+        /** Lower bound of the bucket holding the given percentile, 0..100 */
+        public long percentile(double percent) {
+            long n = mCount.get();
+            if (n == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(n * percent / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += mBuckets.get(i);
+                if (seen >= rank && seen > 0) {
+                    return Math.min(bucketFloor(i), mMax.get());
+                }
+            }
+            return mMax.get();
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                mBuckets.set(i, 0);
+            }
+            mCount.set(0);
+            mSum.set(0);
+            mMax.set(0);
+        }
+
+        static int bucketOf(long value) {
+            if (value < 2 * SUB_BUCKETS) {
+                return (int) value;
+            }
+            int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+            return shift * SUB_BUCKETS + (int) (value >>> shift);
+        }
+
+        static long bucketFloor(int bucket) {
+            if (bucket < 2 * SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = bucket / SUB_BUCKETS - 1;
+            return (long) (bucket - shift * SUB_BUCKETS) << shift;
+        }
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+}
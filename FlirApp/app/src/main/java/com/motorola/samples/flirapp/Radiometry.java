@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.flirapp;
+
+/**
+ * Converts 14-bit raw sensor counts to absolute temperatures.
+ *
+ * The sensor response follows the Planck curve S = R / (exp(B / T) - F) + O
+ * with T in kelvin. The counts of a pixel are the object's radiation weighted
+ * by its emissivity plus the surroundings reflected off it, so the object's
+ * share is recovered before the curve is inverted.
+ *
+ * All that math runs once per raw value into a lookup table, which is
+ * rebuilt only when the calibration, emissivity or reflected temperature
+ * change. Converting a frame is then one table read per pixel. Parameters may
+ * be set from any thread; conversions must all come from one thread, which
+ * picks changes up at its next call.
+ */
+public class Radiometry {
+    public static final int RAW_RANGE = Colormap.RAW_RANGE;
+    public static final double ZERO_CELSIUS = 273.15;
+
+    /** Planck curve constants of one sensor, in raw counts and kelvin */
+    public static class Calibration {
+        public final double r;
+        public final double b;
+        public final double f;
+        public final double o;
+
+        public Calibration(double r, double b, double f, double o) {
+            if (r <= 0 || b <= 0) {
+                throw new IllegalArgumentException("Calibration needs positive R and B");
+            }
+            this.r = r;
+            this.b = b;
+            this.f = f;
+            this.o = o;
+        }
+
+        /** Counts the sensor reads for a black body at kelvin */
+        public double counts(double kelvin) {
+            return r / (Math.exp(b / kelvin) - f) + o;
+        }
+
+        /** Black body temperature in kelvin for the radiation part of the counts, NaN out of range */
+        public double kelvin(double signal) {
+            double x = r / signal + f;
+            return signal > 0 && x > 1 ? b / Math.log(x) : Double.NaN;
+        }
+    }
+
+    /**
+     * Nominal high gain Lepton response, about 8000 counts at 22 C and 30
+     * counts per kelvin. Replace with the calibration of the actual core for
+     * accurate readings.
+     */
+    public static final Calibration LEPTON_NOMINAL = new Calibration(228000, 1428, 1.0, 6186);
+
+    private static class Parameters {
+        final Calibration calibration;
+        final double emissivity;
+        final double reflectedKelvin;
+
+        Parameters(Calibration calibration, double emissivity, double reflectedKelvin) {
+            this.calibration = calibration;
+            this.emissivity = emissivity;
+            this.reflectedKelvin = reflectedKelvin;
+        }
+    }
+
+    private volatile Parameters mRequested;
+    private Parameters mBuilt;
+    private final float[] mCelsius = new float[RAW_RANGE];
+    private final int[] mCentiKelvin = new int[RAW_RANGE];
+
+    public Radiometry(Calibration calibration) {
+        mRequested = new Parameters(calibration, 1.0, ZERO_CELSIUS + 22);
+    }
+
+    public synchronized void setCalibration(Calibration calibration) {
+        Parameters p = mRequested;
+        mRequested = new Parameters(calibration, p.emissivity, p.reflectedKelvin);
+    }
+
+    public Calibration getCalibration() {
+        return mRequested.calibration;
+    }
+
+    /** Emissivity of the objects in view, in (0, 1]; 1 for a black body */
+    public synchronized void setEmissivity(double emissivity) {
+        if (!(emissivity > 0 && emissivity <= 1)) {
+            throw new IllegalArgumentException("Emissivity " + emissivity + " not in (0, 1]");
+        }
+        Parameters p = mRequested;
+        mRequested = new Parameters(p.calibration, emissivity, p.reflectedKelvin);
+    }
+
+    public double getEmissivity() {
+        return mRequested.emissivity;
+    }
+
+    /** Temperature of the surroundings reflected by the objects, usually the ambient temperature */
+    public synchronized void setReflectedTemperature(double celsius) {
+        Parameters p = mRequested;
+        mRequested = new Parameters(p.calibration, p.emissivity, celsius + ZERO_CELSIUS);
+    }
+
+    public double getReflectedTemperature() {
+        return mRequested.reflectedKelvin - ZERO_CELSIUS;
+    }
+
+    /** Fill out[0..count) with degrees Celsius for raw[0..count), NaN where out of range */
+    public void toCelsius(short[] raw, int count, float[] out) {
+        float[] lut = table();
+        for (int i = 0; i < count; i++) {
+            out[i] = lut[raw[i]];
+        }
+    }
+
+    /** Fill out[0..count) with hundredths of a kelvin for raw[0..count), 0 where out of range */
+    public void toCentiKelvin(short[] raw, int count, int[] out) {
+        table();
+        int[] lut = mCentiKelvin;
+        for (int i = 0; i < count; i++) {
+            out[i] = lut[raw[i]];
+        }
+    }
+
+    /** Degrees Celsius for a raw value, interpolated for fractional values such as a mean */
+    public float celsius(double raw) {
+        float[] lut = table();
+        if (!(raw >= 0 && raw <= RAW_RANGE - 1)) {
+            return Float.NaN;
+        }
+        int i = Math.min((int) raw, RAW_RANGE - 2);
+        float t = (float) (raw - i);
+        return lut[i] + (lut[i + 1] - lut[i]) * t;
+    }
+
+    private float[] table() {
+        Parameters requested = mRequested;
+        if (requested != mBuilt) {
+            build(requested);
+            mBuilt = requested;
+        }
+        return mCelsius;
+    }
+
+    private void build(Parameters p) {
+        Calibration c = p.calibration;
+        double reflected = c.counts(p.reflectedKelvin) - c.o;
+        for (int v = 0; v < RAW_RANGE; v++) {
+            // Only the emitted part of the signal says anything about the object
+            double signal = (v - c.o - (1 - p.emissivity) * reflected) / p.emissivity;
+            double kelvin = c.kelvin(signal);
+            if (Double.isNaN(kelvin)) {
+                mCelsius[v] = Float.NaN;
+                mCentiKelvin[v] = 0;
+            } else {
+                mCelsius[v] = (float) (kelvin - ZERO_CELSIUS);
+                mCentiKelvin[v] = (int) Math.round(kelvin * 100);
+            }
+        }
+        Logger.dbg("Radiometry table built for emissivity " + p.emissivity
+                + ", reflected " + (p.reflectedKelvin - ZERO_CELSIUS) + " C");
+    }
+}
@@ -43,39 +43,68 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 public class RawDevice extends Thread {
     private ModManager mModMgr;
     private ModInterfaceDelegation mModDel;
 
-    private ParcelFileDescriptor mParcelFD;
+    private RawTransport mTransport;
     private FileDescriptor[] mPipes;
 
     private OutputStream mOut;
 
-    private static int MAX_BYTES = 1024;
+    // Whole VoSPI packets, up to a Lepton 2 frame or Lepton 3 segment per read
+    private static final int READ_BYTES = 60 * SensorGeometry.LEPTON_2.packetBytes;
+    private final ByteBuffer mReadBuffer = ByteBuffer.allocateDirect(READ_BYTES);
+
+    // Raw channel metrics, see Metrics.report()
+    private final Metrics.Counter mBytesIn = Metrics.get().counter("raw.bytes_in");
+    private final Metrics.Counter mReads = Metrics.get().counter("raw.reads");
+    private final Metrics.Counter mPollWakeups = Metrics.get().counter("raw.poll_wakeups");
+    private final Metrics.Counter mBytesOut = Metrics.get().counter("raw.bytes_out");
+    private final Metrics.Counter mWrites = Metrics.get().counter("raw.writes");
+    private final Metrics.Histogram mReadLatency = Metrics.get().histogram("raw.read");
+    private final Metrics.Histogram mWriteLatency = Metrics.get().histogram("raw.write");
+    private final Metrics.Histogram mCallbackLatency = Metrics.get().histogram("raw.callback");
 
     public RawDevice(ModManager mgr, ModInterfaceDelegation del) {
         mModMgr = mgr;
         mModDel = del;
     }
 
+    /** Read from an already open transport, e.g. a LoopbackTransport */
+    public RawDevice(RawTransport transport) {
+        mTransport = transport;
+    }
+
     public interface DataCallback {
-        public void onData(byte[] data, int len);
+        /**
+         * data holds one read between its position and limit. The buffer is
+         * reused for the next read, so it must not be kept after returning.
+         */
+        public void onData(ByteBuffer data);
     }
 
     private DataCallback mCallback;
+    private volatile StreamRecorder mRecorder;
 
     public void setCallback(DataCallback callback) {
         mCallback = callback;
     }
+
+    /** Capture every read into recorder, or stop capturing with null */
+    public void setRecorder(StreamRecorder recorder) {
+        mRecorder = recorder;
+    }
     @Override
     public void run() {
         Logger.dbg("Starting raw reading thread");
         if (!openDevice())
             return;
 
-        mOut = new FileOutputStream(mParcelFD.getFileDescriptor());
+        mOut = new FileOutputStream(mTransport.getFileDescriptor());
 
         sendOnCommand();
 
@@ -91,14 +120,18 @@ public class RawDevice extends Thread {
     }
 
     private boolean openDevice() {
+        if (mTransport != null)
+            return true;
+
         try {
-            mParcelFD = mModMgr.openModInterface(mModDel,
+            ParcelFileDescriptor pfd = mModMgr.openModInterface(mModDel,
                     ParcelFileDescriptor.MODE_READ_WRITE);
 
-            if (mParcelFD == null) {
+            if (pfd == null) {
                 Logger.err("Cannot get percel FD");
                 return false;
             } else {
+                mTransport = new PfdTransport(pfd);
                 return true;
             }
         } catch (RemoteException e) {
@@ -108,19 +141,33 @@ public class RawDevice extends Thread {
     }
 
     private void blockRead() {
-        byte[] buffer = new byte[MAX_BYTES];
-        FileDescriptor fd = mParcelFD.getFileDescriptor();
-        FileInputStream inputStream = new FileInputStream(fd);
+        ByteBuffer buffer = mReadBuffer;
+        FileDescriptor fd = mTransport.getFileDescriptor();
+        // Reads straight into the direct buffer, no copy through a heap array
+        FileChannel channel = new FileInputStream(fd).getChannel();
         int ret = 0;
         synchronized (mPipes) {
             while (ret >= 0) {
                 try {
                     /** Poll on the exit pipe and the raw channel */
                     if (readDevice()) {
-                        ret = inputStream.read(buffer, 0, MAX_BYTES);
+                        long readStart = System.nanoTime();
+                        buffer.clear();
+                        ret = channel.read(buffer);
+                        mReadLatency.recordSince(readStart);
                         if (ret > 0) {
+                            buffer.flip();
+                            mReads.increment();
+                            mBytesIn.add(ret);
+                            StreamRecorder recorder = mRecorder;
+                            if (recorder != null) {
+                                recorder.record(buffer);
+                            }
                             if (mCallback != null) {
-                                mCallback.onData(buffer, ret);
+                                // Time spent decoding holds up the next read
+                                long start = System.nanoTime();
+                                mCallback.onData(buffer);
+                                mCallbackLatency.recordSince(start);
                             }
                         }
                     } else {
@@ -138,7 +185,7 @@ public class RawDevice extends Thread {
 
     private boolean readDevice() {
         StructPollfd rawFd = new StructPollfd();
-        rawFd.fd = mParcelFD.getFileDescriptor();
+        rawFd.fd = mTransport.getFileDescriptor();
         rawFd.events = (short) (OsConstants.POLLIN | OsConstants.POLLHUP);
 
         StructPollfd syncFd = new StructPollfd();
@@ -151,6 +198,7 @@ public class RawDevice extends Thread {
 
         try {
             int ret = Os.poll(pollfds, -1);
+            mPollWakeups.increment();
             if (ret > 0) {
                 if (syncFd.revents == OsConstants.POLLIN) {
                     /** POLLIN on the syncFd as signal to exit */
@@ -179,11 +227,11 @@ public class RawDevice extends Thread {
     private void closeDevice() {
         /** Close the file descriptor pipes */
 
-        if (mParcelFD != null) try {
-            mParcelFD.close();
-            mParcelFD = null;
+        if (mTransport != null) try {
+            mTransport.close();
+            mTransport = null;
         } catch (IOException e) {
-            Logger.err("Failed to close parcel FD");
+            Logger.err("Failed to close " + mTransport);
         }
     }
 
@@ -229,8 +277,7 @@ public class RawDevice extends Thread {
     private void sendOnCommand() {
         try {
             if (mOut != null) {
-                byte[] mine = "on\0".getBytes();
-                mOut.write(mine);
+                write("on\0".getBytes());
             }
         } catch (IOException e) {
             Logger.err("Failed to send \"on\" command");
@@ -240,11 +287,18 @@ public class RawDevice extends Thread {
     private void sendOffCommand() {
         try {
             if (mOut != null) {
-                byte[] mine = "off\0".getBytes();
-                mOut.write(mine);
+                write("off\0".getBytes());
             }
         } catch (IOException e) {
             Logger.err("Failed to send \"off\" command");
         }
     }
+
+    private void write(byte[] cmd) throws IOException {
+        long start = System.nanoTime();
+        mOut.write(cmd);
+        mWriteLatency.recordSince(start);
+        mWrites.increment();
+        mBytesOut.add(cmd.length);
+    }
 }
@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.flirapp;
+
+/**
+ * One decoded sensor frame of 14-bit values, recycled through FrameQueue.
+ */
+public class RawFrame {
+    public final short[] pixels;
+    public final int[] histogram;   // Counts per value, zero outside min..max; may be null
+    public int min;
+    public int max;
+    public long sequence;
+    public long timestampNs;        // First line decoded, System.nanoTime()
+
+    public RawFrame(int width, int height) {
+        this(width, height, false);
+    }
+
+    public RawFrame(int width, int height, boolean withHistogram) {
+        pixels = new short[width * height];
+        histogram = withHistogram ? new int[Colormap.RAW_RANGE] : null;
+    }
+
+    /** Zero the histogram before the frame is refilled, only min..max can hold counts */
+    public void clearHistogram() {
+        if (histogram == null)
+            return;
+        for (int v = min; v <= max; v++) {
+            histogram[v] = 0;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.flirapp;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Region outlines and their statistics drawn over the thermal image.
+ *
+ * The view must cover the ImageView showing the frames, which scales them
+ * with FIT_CENTER. Regions can be dragged around; touches outside of them go
+ * to the views below. Statistics arrive from FlirImage on its render worker
+ * and are copied here before the view is invalidated. With a Radiometry set
+ * they are shown in degrees Celsius, otherwise in raw counts.
+ */
+public class RegionOverlay extends View implements FlirImage.RegionListener {
+    private static final int REGION_SIZE = 12;
+
+    public interface Callback {
+        /** Called on the UI thread with a new array whenever regions are added, moved or removed */
+        public void onRegionsChanged(RegionStats.Region[] regions);
+    }
+
+    private final Paint mBoxPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    private int mSensorWidth = 1;
+    private int mSensorHeight = 1;
+    private Callback mCallback;
+    private volatile Radiometry mRadiometry;
+
+    private RegionStats.Region[] mRegions = new RegionStats.Region[0];
+    // Mean, standard deviation, min and max per region, NaN until measured.
+    // Guarded by this, written by the render worker.
+    private float[] mStats = new float[0];
+    private boolean mInCelsius = false;
+
+    private int mDragging = -1;
+    private float mDragX;
+    private float mDragY;
+
+    public RegionOverlay(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        mBoxPaint.setStyle(Paint.Style.STROKE);
+        mBoxPaint.setStrokeWidth(3);
+        mBoxPaint.setColor(Color.WHITE);
+        mTextPaint.setColor(Color.WHITE);
+        mTextPaint.setTextSize(28);
+    }
+
+    public void setSensorSize(int width, int height) {
+        mSensorWidth = width;
+        mSensorHeight = height;
+        invalidate();
+    }
+
+    /** Converts on the render worker, which must be the thread that uses radiometry */
+    public void setRadiometry(Radiometry radiometry) {
+        mRadiometry = radiometry;
+    }
+
+    public void setCallback(Callback callback) {
+        mCallback = callback;
+    }
+
+    /** New region in the middle of the frame */
+    public void addRegion() {
+        int size = Math.min(REGION_SIZE, Math.min(mSensorWidth, mSensorHeight));
+        RegionStats.Region[] regions = new RegionStats.Region[mRegions.length + 1];
+        System.arraycopy(mRegions, 0, regions, 0, mRegions.length);
+        regions[mRegions.length] = new RegionStats.Region((mSensorWidth - size) / 2,
+                (mSensorHeight - size) / 2, size, size);
+        setRegions(regions);
+    }
+
+    public void clearRegions() {
+        setRegions(new RegionStats.Region[0]);
+    }
+
+    private void setRegions(RegionStats.Region[] regions) {
+        synchronized (this) {
+            // Moved regions keep showing their last statistics until the next frame
+            float[] stats = new float[regions.length * 4];
+            Arrays.fill(stats, Float.NaN);
+            System.arraycopy(mStats, 0, stats, 0, Math.min(mStats.length, stats.length));
+            mRegions = regions;
+            mStats = stats;
+        }
+        if (mCallback != null) {
+            mCallback.onRegionsChanged(regions);
+        }
+        invalidate();
+    }
+
+    @Override
+    public void onRegionStats(RegionStats.Region[] regions, long sequence) {
+        Radiometry radiometry = mRadiometry;
+        synchronized (this) {
+            if (regions != mRegions)
+                return;
+            for (int i = 0; i < regions.length; i++) {
+                RegionStats.Region r = regions[i];
+                if (radiometry != null) {
+                    // The curve is close to linear over a region, so the deviation scales by its slope
+                    float mean = radiometry.celsius(r.mean);
+                    mStats[i * 4] = mean;
+                    mStats[i * 4 + 1] = (float) r.stdDev * (radiometry.celsius(r.mean + 1) - mean);
+                    mStats[i * 4 + 2] = radiometry.celsius(r.min);
+                    mStats[i * 4 + 3] = radiometry.celsius(r.max);
+                } else {
+                    mStats[i * 4] = (float) r.mean;
+                    mStats[i * 4 + 1] = (float) r.stdDev;
+                    mStats[i * 4 + 2] = r.min;
+                    mStats[i * 4 + 3] = r.max;
+                }
+            }
+            mInCelsius = radiometry != null;
+        }
+        postInvalidate();
+    }
+
+    // FIT_CENTER: uniform scale, centered
+    private float scale() {
+        return Math.min((float) getWidth() / mSensorWidth, (float) getHeight() / mSensorHeight);
+    }
+
+    private float left() {
+        return (getWidth() - mSensorWidth * scale()) / 2;
+    }
+
+    private float top() {
+        return (getHeight() - mSensorHeight * scale()) / 2;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        float scale = scale();
+        float left = left();
+        float top = top();
+        synchronized (this) {
+            for (int i = 0; i < mRegions.length; i++) {
+                RegionStats.Region r = mRegions[i];
+                float l = left + r.x * scale;
+                float t = top + r.y * scale;
+                canvas.drawRect(l, t, l + r.width * scale, t + r.height * scale, mBoxPaint);
+                if (!Float.isNaN(mStats[i * 4])) {
+                    String format = mInCelsius ? "%.1f\u00b0C \u00b1%.1f [%.1f-%.1f]"
+                            : "%.0f \u00b1%.1f [%.0f-%.0f]";
+                    canvas.drawText(String.format(Locale.US, format,
+                            mStats[i * 4], mStats[i * 4 + 1], mStats[i * 4 + 2], mStats[i * 4 + 3]),
+                            l, t - 6, mTextPaint);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        float scale = scale();
+        float x = (event.getX() - left()) / scale;
+        float y = (event.getY() - top()) / scale;
+
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                mDragging = regionAt(x, y);
+                mDragX = x;
+                mDragY = y;
+                return mDragging >= 0;
+            case MotionEvent.ACTION_MOVE:
+                if (mDragging >= 0) {
+                    moveRegion(mDragging, Math.round(x - mDragX), Math.round(y - mDragY));
+                }
+                return mDragging >= 0;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                boolean handled = mDragging >= 0;
+                mDragging = -1;
+                return handled;
+            default:
+                return false;
+        }
+    }
+
+    // Topmost region under x, y in sensor pixels
+    private int regionAt(float x, float y) {
+        for (int i = mRegions.length - 1; i >= 0; i--) {
+            RegionStats.Region r = mRegions[i];
+            if (x >= r.x && x < r.x + r.width && y >= r.y && y < r.y + r.height) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void moveRegion(int index, int dx, int dy) {
+        if (dx == 0 && dy == 0)
+            return;
+        RegionStats.Region r = mRegions[index];
+        int x = Math.max(0, Math.min(mSensorWidth - r.width, r.x + dx));
+        int y = Math.max(0, Math.min(mSensorHeight - r.height, r.y + dy));
+        if (x == r.x && y == r.y)
+            return;
+        // Keep the finger on the same spot of the region
+        mDragX += x - r.x;
+        mDragY += y - r.y;
+
+        RegionStats.Region[] regions = mRegions.clone();
+        regions[index] = new RegionStats.Region(x, y, r.width, r.height);
+        setRegions(regions);
+    }
+}
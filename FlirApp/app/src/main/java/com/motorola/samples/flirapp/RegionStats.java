@@ -0,0 +1,306 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.flirapp;
+
+import java.util.Arrays;
+
+/**
+ * Constant time statistics of any rectangle of a frame.
+ *
+ * update() builds integral images of the values and of their squares in one
+ * pass over the frame, so the sum, mean and variance of a rectangle take four
+ * lookups each. Min and max come from a 2D sparse table of power-of-two
+ * blocks, where any rectangle is covered by four overlapping blocks. Each
+ * block size takes a pass over the frame, so a size is only built the first
+ * time min() or max() needs it. measure() uses block sizes that are already
+ * built and otherwise scans the region, which is never slower for a single
+ * region. measure(Region[]) first builds each block size whose regions
+ * together cover more pixels than building it takes passes over the frame.
+ */
+public class RegionStats {
+
+    /** A rectangle in sensor pixels and its statistics from the last measure() */
+    public static class Region {
+        public final int x;
+        public final int y;
+        public final int width;
+        public final int height;
+
+        public double mean;
+        public double stdDev;
+        public int min;
+        public int max;
+
+        public Region(int x, int y, int width, int height) {
+            if (width <= 0 || height <= 0) {
+                throw new IllegalArgumentException("Empty region " + width + "x" + height);
+            }
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public String toString() {
+            return "Region " + width + "x" + height + "+" + x + "+" + y;
+        }
+    }
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mStride;              // Integral images have a zero row and column
+    private final int[] mSum;
+    private final long[] mSumSq;
+
+    private final int mLevelsX;
+    private final int mLevelsY;
+    private final short[][] mMinTable;      // [kx * mLevelsY + ky], blocks of 2^kx by 2^ky
+    private final short[][] mMaxTable;
+    private final boolean[] mBuilt;
+    private final long[] mAreas;            // Region pixels per level, measure(Region[]) only
+
+    public RegionStats(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        mStride = width + 1;
+        mSum = new int[mStride * (height + 1)];
+        mSumSq = new long[mStride * (height + 1)];
+        mLevelsX = log2(width) + 1;
+        mLevelsY = log2(height) + 1;
+        mMinTable = new short[mLevelsX * mLevelsY][];
+        mMaxTable = new short[mLevelsX * mLevelsY][];
+        mBuilt = new boolean[mLevelsX * mLevelsY];
+        mAreas = new long[mLevelsX * mLevelsY];
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /** Index frame, which must not change until the next update() if min/max are wanted */
+    public void update(short[] frame) {
+        int stride = mStride;
+        int[] sum = mSum;
+        long[] sumSq = mSumSq;
+        for (int y = 0; y < mHeight; y++) {
+            int row = y * mWidth;
+            int above = y * stride + 1;
+            int at = above + stride;
+            int rowSum = 0;
+            long rowSq = 0;
+            for (int x = 0; x < mWidth; x++) {
+                int v = frame[row + x];
+                rowSum += v;
+                rowSq += (long) v * v;
+                sum[at + x] = sum[above + x] + rowSum;
+                sumSq[at + x] = sumSq[above + x] + rowSq;
+            }
+        }
+        Arrays.fill(mBuilt, false);
+        // Single pixel blocks are the frame itself
+        mMinTable[0] = frame;
+        mMaxTable[0] = frame;
+        mBuilt[0] = true;
+    }
+
+    public long sum(int x, int y, int width, int height) {
+        check(x, y, width, height);
+        int a = y * mStride + x;
+        int b = a + height * mStride;
+        return (long) mSum[b + width] - mSum[b] - mSum[a + width] + mSum[a];
+    }
+
+    public double mean(int x, int y, int width, int height) {
+        return (double) sum(x, y, width, height) / (width * height);
+    }
+
+    public double variance(int x, int y, int width, int height) {
+        check(x, y, width, height);
+        int a = y * mStride + x;
+        int b = a + height * mStride;
+        long sq = mSumSq[b + width] - mSumSq[b] - mSumSq[a + width] + mSumSq[a];
+        double n = width * height;
+        double mean = sum(x, y, width, height) / n;
+        return Math.max(0, sq / n - mean * mean);
+    }
+
+    public int min(int x, int y, int width, int height) {
+        return query(x, y, width, height, true);
+    }
+
+    public int max(int x, int y, int width, int height) {
+        return query(x, y, width, height, false);
+    }
+
+    /** Fill in the statistics of region from the frame given to update() */
+    public void measure(Region region) {
+        int x = region.x;
+        int y = region.y;
+        int w = region.width;
+        int h = region.height;
+        region.mean = mean(x, y, w, h);
+        region.stdDev = Math.sqrt(variance(x, y, w, h));
+        if (!mBuilt[log2(w) * mLevelsY + log2(h)]) {
+            scan(region);
+        } else {
+            region.min = min(x, y, w, h);
+            region.max = max(x, y, w, h);
+        }
+    }
+
+    /** Fill in the statistics of every region, building block sizes that many regions share */
+    public void measure(Region[] regions) {
+        long[] areas = mAreas;
+        Arrays.fill(areas, 0);
+        for (Region region : regions) {
+            areas[log2(region.width) * mLevelsY + log2(region.height)] +=
+                    (long) region.width * region.height;
+        }
+        // Lower levels first, so a level counts the passes an earlier one already made
+        long framePixels = (long) mWidth * mHeight;
+        for (int kx = 0; kx < mLevelsX; kx++) {
+            for (int ky = 0; ky < mLevelsY; ky++) {
+                long area = areas[kx * mLevelsY + ky];
+                if (area > 0 && area > buildPasses(kx, ky) * framePixels) {
+                    buildLevel(kx, ky);
+                }
+            }
+        }
+        for (Region region : regions) {
+            measure(region);
+        }
+    }
+
+    // Scanning one region never costs more than the table passes over the whole frame
+    private void scan(Region region) {
+        short[] frame = mMinTable[0];
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int y = region.y; y < region.y + region.height; y++) {
+            int end = y * mWidth + region.x + region.width;
+            for (int i = end - region.width; i < end; i++) {
+                int v = frame[i];
+                if (v < min)
+                    min = v;
+                if (v > max)
+                    max = v;
+            }
+        }
+        region.min = min;
+        region.max = max;
+    }
+
+    private int query(int x, int y, int width, int height, boolean min) {
+        check(x, y, width, height);
+        int kx = log2(width);
+        int ky = log2(height);
+        buildLevel(kx, ky);
+        short[] t = (min ? mMinTable : mMaxTable)[kx * mLevelsY + ky];
+        int x2 = x + width - (1 << kx);
+        int y2 = (y + height - (1 << ky)) * mWidth;
+        int y1 = y * mWidth;
+        int a = t[y1 + x];
+        int b = t[y1 + x2];
+        int c = t[y2 + x];
+        int d = t[y2 + x2];
+        if (min) {
+            return Math.min(Math.min(a, b), Math.min(c, d));
+        }
+        return Math.max(Math.max(a, b), Math.max(c, d));
+    }
+
+    // Passes over the frame buildLevel(kx, ky) would make
+    private int buildPasses(int kx, int ky) {
+        int passes = 0;
+        while (!mBuilt[kx * mLevelsY + ky]) {
+            passes++;
+            if (ky > 0) {
+                ky--;
+            } else {
+                kx--;
+            }
+        }
+        return passes;
+    }
+
+    // Blocks of 2^kx by 2^ky grow from half as high ones, or from half as wide ones on the first row
+    private void buildLevel(int kx, int ky) {
+        int level = kx * mLevelsY + ky;
+        if (mBuilt[level])
+            return;
+        if (mMinTable[level] == null) {
+            mMinTable[level] = new short[mWidth * mHeight];
+            mMaxTable[level] = new short[mWidth * mHeight];
+        }
+        if (ky > 0) {
+            buildLevel(kx, ky - 1);
+            combine(level, level - 1, (1 << (ky - 1)) * mWidth, 1 << kx, 1 << ky);
+        } else {
+            buildLevel(kx - 1, 0);
+            combine(level, (kx - 1) * mLevelsY, 1 << (kx - 1), 1 << kx, 1);
+        }
+        mBuilt[level] = true;
+    }
+
+    // Blocks of level dst are the two blocks of level src at i and i + offset
+    private void combine(int dst, int src, int offset, int blockWidth, int blockHeight) {
+        short[] minSrc = mMinTable[src];
+        short[] maxSrc = mMaxTable[src];
+        short[] minDst = mMinTable[dst];
+        short[] maxDst = mMaxTable[dst];
+        for (int y = 0; y + blockHeight <= mHeight; y++) {
+            int row = y * mWidth;
+            for (int i = row; i + blockWidth <= row + mWidth; i++) {
+                short a = minSrc[i];
+                short b = minSrc[i + offset];
+                minDst[i] = a < b ? a : b;
+                a = maxSrc[i];
+                b = maxSrc[i + offset];
+                maxDst[i] = a > b ? a : b;
+            }
+        }
+    }
+
+    private void check(int x, int y, int width, int height) {
+        if (x < 0 || y < 0 || width <= 0 || height <= 0
+                || x + width > mWidth || y + height > mHeight) {
+            throw new IllegalArgumentException("Region " + width + "x" + height + "+" + x + "+" + y
+                    + " outside " + mWidth + "x" + mHeight);
+        }
+    }
+
+    private static int log2(int n) {
+        return 31 - Integer.numberOfLeadingZeros(n);
+    }
+}
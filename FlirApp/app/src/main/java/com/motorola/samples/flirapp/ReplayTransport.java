@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.flirapp;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Loopback channel whose fake mod plays back a StreamRecording, so a capture
+ * taken in the field drives the app the same way the Mod did.
+ */
+public class ReplayTransport extends LoopbackTransport {
+    /** Send chunks back to back, as fast as the app reads them */
+    public static final float MAX_SPEED = 0;
+
+    /** speed 1 keeps the recorded timing, 2 plays twice as fast, MAX_SPEED does not wait */
+    public ReplayTransport(File path, float speed, boolean loop) throws IOException {
+        super(new RecordingScript(new StreamRecording(path), speed, loop));
+    }
+
+    public static class RecordingScript extends FakeMod.Script {
+        private final StreamRecording mRecording;
+        private final float mSpeed;
+        private final boolean mLoop;
+
+        public RecordingScript(StreamRecording recording, float speed, boolean loop) {
+            mRecording = recording;
+            mSpeed = speed;
+            mLoop = loop;
+        }
+
+        @Override
+        public void run(FakeMod mod) throws IOException, InterruptedException {
+            byte[] buffer = new byte[1024];
+            do {
+                mRecording.rewind();
+                long start = System.nanoTime();
+                long first = -1;
+                int chunks = 0;
+                while (mod.isRunning() && mRecording.next()) {
+                    if (first < 0) {
+                        // Skip the wait for the first chunk
+                        first = mRecording.getTimeNanos();
+                    }
+                    if (mSpeed > 0) {
+                        long elapsed = mRecording.getTimeNanos() - first;
+                        long due = start + (long) (elapsed / mSpeed);
+                        long wait = due - System.nanoTime();
+                        if (wait > 0) {
+                            Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                        }
+                    }
+                    if (buffer.length < mRecording.getLength()) {
+                        buffer = new byte[mRecording.getLength()];
+                    }
+                    int length = mRecording.read(buffer, 0);
+                    mod.write(buffer, 0, length);
+                    chunks++;
+                }
+                if (chunks == 0) {
+                    // Nothing to loop over
+                    break;
+                }
+            } while (mLoop && mod.isRunning());
+        }
+    }
+}
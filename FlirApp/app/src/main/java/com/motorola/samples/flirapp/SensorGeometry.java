@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.flirapp;
+
+/**
+ * Frame layout of a Lepton core as seen on the VoSPI stream.
+ *
+ * Every packet carries packetPixels values. A frame is sent as one or more
+ * segments of packetsPerSegment packets; packet numbers restart at 0 in each
+ * segment, and on multi-segment cores packet SEGMENT_ID_PACKET also carries the
+ * 1-based segment number. Packets fill the frame in order, row by row, so
+ * packet p of segment s holds pixels starting at (s * packetsPerSegment + p) *
+ * packetPixels whether a row takes one packet or several.
+ */
+public class SensorGeometry {
+    /** 80x60, one packet per row and one segment per frame */
+    public static final SensorGeometry LEPTON_2 = new SensorGeometry(80, 60, 80, 1);
+    /** 160x120, two packets per row and four segments per frame */
+    public static final SensorGeometry LEPTON_3 = new SensorGeometry(160, 120, 80, 4);
+
+    public static final int HEADER_BYTES = 4;
+    public static final int SEGMENT_ID_PACKET = 20;
+
+    public final int width;
+    public final int height;
+    public final int packetPixels;
+    public final int segments;
+    public final int packetsPerSegment;
+    public final int packetBytes;
+
+    public SensorGeometry(int width, int height, int packetPixels, int segments) {
+        int packets = width * height / packetPixels;
+        if (width <= 0 || height <= 0 || packetPixels <= 0 || segments <= 0
+                || packets * packetPixels != width * height || packets % segments != 0) {
+            throw new IllegalArgumentException("Bad geometry " + width + "x" + height
+                    + " in " + segments + " segments of " + packetPixels + " pixel packets");
+        }
+        this.width = width;
+        this.height = height;
+        this.packetPixels = packetPixels;
+        this.segments = segments;
+        packetsPerSegment = packets / segments;
+        packetBytes = HEADER_BYTES + packetPixels * 2;
+        if (segments > 1 && packetsPerSegment <= SEGMENT_ID_PACKET) {
+            throw new IllegalArgumentException("Segments too short to carry their number");
+        }
+    }
+
+    public int getPixels() {
+        return width * height;
+    }
+
+    /** Bytes of VoSPI packets making up one whole frame */
+    public int getFrameBytes() {
+        return segments * packetsPerSegment * packetBytes;
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height + (segments > 1 ? " in " + segments + " segments" : "");
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.flirapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Append-only capture of a raw byte stream into a memory-mapped file.
+ *
+ * Every chunk is stored exactly as it was read, behind its time since the start
+ * of the recording in nanoseconds (8 bytes) and its length (4 bytes), so that
+ * StreamRecording can replay it with the original pacing and read boundaries.
+ * The file is mapped a segment at a time, which makes record() a bounds check
+ * and a copy into the page cache. close() trims the file to what was written.
+ * Empty reads are not recorded, so after a crash the zero filled rest of the
+ * last segment reads as the end of the recording.
+ */
+public class StreamRecorder {
+    public static final int MAGIC = 0x4D444B52;     // "MDKR"
+    public static final int VERSION = 1;
+    public static final String EXTENSION = ".rawrec";
+
+    // Magic, version and the wall clock start time in milliseconds
+    static final int FILE_HEADER_BYTES = 16;
+    static final int CHUNK_HEADER_BYTES = 12;
+    private static final int SEGMENT_BYTES = 1 << 20;
+
+    private final File mPath;
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final long mStartNs;
+    private MappedByteBuffer mMap;
+    private long mWritten = 0;          // Bytes written so far
+    private long mChunks = 0;
+
+    public StreamRecorder(File path) throws IOException {
+        mPath = path;
+        mFile = new RandomAccessFile(path, "rw");
+        mFile.setLength(0);
+        mChannel = mFile.getChannel();
+        mStartNs = System.nanoTime();
+
+        mapSegment(0, SEGMENT_BYTES);
+        mMap.putInt(MAGIC);
+        mMap.putInt(VERSION);
+        mMap.putLong(System.currentTimeMillis());
+        mWritten = FILE_HEADER_BYTES;
+    }
+
+    /** New file in dir named after prefix and the current time */
+    public static File createFile(File dir, String prefix) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US);
+        return new File(dir, prefix + "-" + format.format(new Date()) + EXTENSION);
+    }
+
+    public File getPath() {
+        return mPath;
+    }
+
+    public synchronized long getChunkCount() {
+        return mChunks;
+    }
+
+    public synchronized long getLength() {
+        return mWritten;
+    }
+
+    /** Append one chunk; on a write error the recording stops and the error is logged */
+    public synchronized void record(byte[] data, int offset, int length) {
+        if (startChunk(length)) {
+            mMap.put(data, offset, length);
+        }
+    }
+
+    /** Append the bytes between data's position and limit as one chunk, data's position is kept */
+    public synchronized void record(ByteBuffer data) {
+        if (startChunk(data.remaining())) {
+            int position = data.position();
+            mMap.put(data);
+            data.position(position);
+        }
+    }
+
+    private boolean startChunk(int length) {
+        if (mMap == null || length == 0)
+            return false;
+
+        int needed = CHUNK_HEADER_BYTES + length;
+        try {
+            if (mMap.remaining() < needed) {
+                mapSegment(mWritten, Math.max(SEGMENT_BYTES, needed));
+            }
+        } catch (IOException e) {
+            Logger.err("Stopped recording " + mPath + ": " + e);
+            close();
+            return false;
+        }
+        mMap.putLong(System.nanoTime() - mStartNs);
+        mMap.putInt(length);
+        mWritten += needed;
+        mChunks++;
+        return true;
+    }
+
+    public synchronized void close() {
+        if (mMap == null)
+            return;
+        mMap = null;
+        try {
+            mChannel.truncate(mWritten);
+            mFile.close();
+        } catch (IOException e) {
+            Logger.err("Failed to close " + mPath + ": " + e);
+        }
+    }
+
+    private void mapSegment(long position, int size) throws IOException {
+        mMap = mChannel.map(FileChannel.MapMode.READ_WRITE, position, size);
+    }
+
+    @Override
+    public String toString() {
+        return "StreamRecorder " + mPath;
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.flirapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads back a file written by StreamRecorder, one chunk at a time.
+ *
+ * The file is mapped read-only, so stepping through it does not allocate or
+ * copy until read() is called. A chunk cut short by the app dying mid-record,
+ * or the zero filled space after the last chunk, ends the recording.
+ */
+public class StreamRecording {
+    private final File mPath;
+    private final ByteBuffer mMap;
+    private final ByteBuffer mData;
+    private final long mStartTimeMs;
+
+    private long mChunkTimeNs;
+    private int mChunkOffset;
+    private int mChunkLength;
+
+    public StreamRecording(File path) throws IOException {
+        mPath = path;
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            if (size < StreamRecorder.FILE_HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a stream recording: " + path);
+            }
+            mMap = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } finally {
+            file.close();
+        }
+        mData = mMap.duplicate();
+
+        if (mMap.getInt() != StreamRecorder.MAGIC || mMap.getInt() != StreamRecorder.VERSION) {
+            throw new IOException("Not a stream recording: " + path);
+        }
+        mStartTimeMs = mMap.getLong();
+    }
+
+    /** Most recently written recording in dir, or null if there is none */
+    public static File findLatest(File dir) {
+        File[] files = dir != null ? dir.listFiles() : null;
+        File latest = null;
+        if (files != null) {
+            for (File f : files) {
+                if (f.getName().endsWith(StreamRecorder.EXTENSION)
+                        && (latest == null || f.lastModified() > latest.lastModified())) {
+                    latest = f;
+                }
+            }
+        }
+        return latest;
+    }
+
+    public File getPath() {
+        return mPath;
+    }
+
+    /** Wall clock time the recording was started, System.currentTimeMillis() */
+    public long getStartTimeMillis() {
+        return mStartTimeMs;
+    }
+
+    /** Go back to before the first chunk */
+    public void rewind() {
+        mMap.position(StreamRecorder.FILE_HEADER_BYTES);
+        mChunkLength = 0;
+    }
+
+    /** Step to the next chunk, false at the end of the recording */
+    public boolean next() {
+        if (mMap.remaining() < StreamRecorder.CHUNK_HEADER_BYTES) {
+            return false;
+        }
+        long time = mMap.getLong();
+        int length = mMap.getInt();
+        if (length <= 0 || length > mMap.remaining()) {
+            mMap.position(mMap.limit());
+            return false;
+        }
+        mChunkTimeNs = time;
+        mChunkOffset = mMap.position();
+        mChunkLength = length;
+        mMap.position(mChunkOffset + length);
+        return true;
+    }
+
+    /** Time of the current chunk since the start of the recording */
+    public long getTimeNanos() {
+        return mChunkTimeNs;
+    }
+
+    public int getLength() {
+        return mChunkLength;
+    }
+
+    /** Copy the current chunk into dst, which must have getLength() bytes free */
+    public int read(byte[] dst, int offset) {
+        mData.position(mChunkOffset);
+        mData.get(dst, offset, mChunkLength);
+        return mChunkLength;
+    }
+
+    @Override
+    public String toString() {
+        return "StreamRecording " + mPath;
+    }
+}
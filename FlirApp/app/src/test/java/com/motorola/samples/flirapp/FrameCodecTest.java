@@ -0,0 +1,150 @@
+package com.motorola.samples.flirapp;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * FrameCodec must give back every frame exactly, in key and delta frames.
+ */
+public class FrameCodecTest {
+    private static final int WIDTH = 80;
+    private static final int HEIGHT = 60;
+    private static final int PIXELS = WIDTH * HEIGHT;
+    private static final int MAX_VALUE = 0x3FFF;
+
+    @Test
+    public void keyFrame_roundTrip() throws Exception {
+        short[] frame = noise(new Random(1), MAX_VALUE);
+        FrameCodec encoder = new FrameCodec(PIXELS, 1);
+        FrameCodec decoder = new FrameCodec(PIXELS, 1);
+
+        byte[] encoded = new byte[FrameCodec.maxEncodedSize(PIXELS)];
+        int length = encoder.encode(frame, encoded, 0);
+        assertEquals(FrameCodec.KEY_FRAME, FrameCodec.frameType(encoded, 0));
+
+        short[] decoded = new short[PIXELS];
+        assertTrue(decoder.decode(encoded, 0, length, decoded));
+        assertArrayEquals(frame, decoded);
+    }
+
+    @Test
+    public void deltaFrames_roundTrip() throws Exception {
+        Random random = new Random(2);
+        int keyInterval = 4;
+        FrameCodec encoder = new FrameCodec(PIXELS, keyInterval);
+        FrameCodec decoder = new FrameCodec(PIXELS, keyInterval);
+        byte[] encoded = new byte[FrameCodec.maxEncodedSize(PIXELS)];
+        short[] decoded = new short[PIXELS];
+
+        short[] frame = noise(random, MAX_VALUE);
+        for (int n = 0; n < 3 * keyInterval; n++) {
+            // A moving hot spot over a mostly static, slightly noisy scene
+            for (int i = 0; i < PIXELS; i++) {
+                if (random.nextInt(8) == 0) {
+                    frame[i] = clamp(frame[i] + random.nextInt(9) - 4);
+                }
+            }
+            for (int y = 20; y < 30; y++) {
+                for (int x = n; x < n + 10; x++) {
+                    frame[y * WIDTH + x] = MAX_VALUE;
+                }
+            }
+
+            int length = encoder.encode(frame, encoded, 1);
+            assertTrue(length <= FrameCodec.maxEncodedSize(PIXELS));
+            int expected = n % keyInterval == 0 ? FrameCodec.KEY_FRAME : FrameCodec.DELTA_FRAME;
+            assertEquals("frame " + n, expected, FrameCodec.frameType(encoded, 1));
+            assertTrue("frame " + n, decoder.decode(encoded, 1, length, decoded));
+            assertArrayEquals("frame " + n, frame, decoded);
+        }
+    }
+
+    @Test
+    public void longRuns_roundTrip() throws Exception {
+        // Runs longer than a two byte varint holds
+        int pixels = 160 * 120;
+        short[] frame = new short[pixels];
+        for (int i = 0; i < pixels; i++) {
+            frame[i] = 8000;
+        }
+        frame[pixels / 2] = 8001;
+        FrameCodec encoder = new FrameCodec(pixels, 8);
+        FrameCodec decoder = new FrameCodec(pixels, 8);
+        byte[] encoded = new byte[FrameCodec.maxEncodedSize(pixels)];
+        short[] decoded = new short[pixels];
+
+        int length = encoder.encode(frame, encoded, 0);
+        assertTrue("key frame of " + length + " bytes", length < 16);
+        assertTrue(decoder.decode(encoded, 0, length, decoded));
+        assertArrayEquals(frame, decoded);
+
+        // An unchanged frame is a single run
+        length = encoder.encode(frame, encoded, 0);
+        assertEquals(FrameCodec.DELTA_FRAME, FrameCodec.frameType(encoded, 0));
+        assertEquals(4, length);
+        assertTrue(decoder.decode(encoded, 0, length, decoded));
+        assertArrayEquals(frame, decoded);
+    }
+
+    @Test
+    public void extremeErrors_roundTrip() throws Exception {
+        // Every key frame error is +16383 or -16383
+        short[] high = new short[PIXELS];
+        for (int i = 0; i < PIXELS; i++) {
+            high[i] = (short) (i % 2 == 0 ? MAX_VALUE : 0);
+        }
+        // Every delta error is the opposite
+        short[] low = new short[PIXELS];
+        for (int i = 0; i < PIXELS; i++) {
+            low[i] = (short) (MAX_VALUE - high[i]);
+        }
+
+        FrameCodec encoder = new FrameCodec(PIXELS, 64);
+        FrameCodec decoder = new FrameCodec(PIXELS, 64);
+        byte[] encoded = new byte[FrameCodec.maxEncodedSize(PIXELS)];
+        short[] decoded = new short[PIXELS];
+        for (short[] frame : new short[][]{high, low, high}) {
+            int length = encoder.encode(frame, encoded, 0);
+            assertTrue(length <= FrameCodec.maxEncodedSize(PIXELS));
+            assertTrue(decoder.decode(encoded, 0, length, decoded));
+            assertArrayEquals(frame, decoded);
+        }
+    }
+
+    @Test
+    public void deltaWithoutPrevious_isRejected() throws Exception {
+        FrameCodec encoder = new FrameCodec(PIXELS, 64);
+        byte[] encoded = new byte[FrameCodec.maxEncodedSize(PIXELS)];
+        short[] frame = noise(new Random(3), MAX_VALUE);
+        encoder.encode(frame, encoded, 0);
+        int length = encoder.encode(frame, encoded, 0);
+        assertEquals(FrameCodec.DELTA_FRAME, FrameCodec.frameType(encoded, 0));
+
+        assertFalse(new FrameCodec(PIXELS, 64).decode(encoded, 0, length, new short[PIXELS]));
+    }
+
+    @Test
+    public void truncatedFrame_isRejected() throws Exception {
+        FrameCodec encoder = new FrameCodec(PIXELS, 1);
+        byte[] encoded = new byte[FrameCodec.maxEncodedSize(PIXELS)];
+        int length = encoder.encode(noise(new Random(4), MAX_VALUE), encoded, 0);
+
+        FrameCodec decoder = new FrameCodec(PIXELS, 1);
+        assertFalse(decoder.decode(encoded, 0, length - 1, new short[PIXELS]));
+    }
+
+    private static short[] noise(Random random, int max) {
+        short[] frame = new short[PIXELS];
+        for (int i = 0; i < PIXELS; i++) {
+            frame[i] = (short) random.nextInt(max + 1);
+        }
+        return frame;
+    }
+
+    private static short clamp(int value) {
+        return (short) Math.max(0, Math.min(MAX_VALUE, value));
+    }
+}
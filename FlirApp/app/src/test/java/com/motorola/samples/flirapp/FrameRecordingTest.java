@@ -0,0 +1,146 @@
+package com.motorola.samples.flirapp;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * FrameRecording.readFrame() on a compressed recording, written here in
+ * FrameRecorder's layout since FrameRecorder's writer thread needs Android.
+ */
+public class FrameRecordingTest {
+    private static final int WIDTH = 16;
+    private static final int HEIGHT = 12;
+    private static final int PIXELS = WIDTH * HEIGHT;
+    private static final int FRAMES = 3 * FrameRecorder.KEY_INTERVAL - 10;
+
+    @Test
+    public void readFrame_inOrder() throws Exception {
+        File dir = record(-1);
+        try {
+            FrameRecording recording = new FrameRecording(dir);
+            assertEquals(FRAMES, recording.getFrameCount());
+            short[] frame = new short[PIXELS];
+            for (int i = 0; i < FRAMES; i++) {
+                recording.readFrame(i, frame);
+                assertArrayEquals("frame " + i, frame(i), frame);
+                assertEquals(i, recording.getSequence(i));
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void readFrame_jumpsBackToKeyFrame() throws Exception {
+        // Decoding from the start of the segment would fail on this frame
+        int corrupt = FrameRecorder.KEY_INTERVAL / 2;
+        File dir = record(corrupt);
+        try {
+            FrameRecording recording = new FrameRecording(dir);
+            short[] frame = new short[PIXELS];
+            int[] order = {
+                    FrameRecorder.KEY_INTERVAL + 5,
+                    2 * FrameRecorder.KEY_INTERVAL + 20,
+                    FrameRecorder.KEY_INTERVAL,
+                    FrameRecorder.KEY_INTERVAL * 2 - 1,
+                    FrameRecorder.KEY_INTERVAL * 2,
+                    corrupt - 1,
+                    3,
+            };
+            for (int i : order) {
+                recording.readFrame(i, frame);
+                assertArrayEquals("frame " + i, frame(i), frame);
+            }
+
+            try {
+                recording.readFrame(corrupt + 1, frame);
+                fail("Decoded past a corrupt frame");
+            } catch (IOException e) {
+                // Expected
+            }
+            // Recovers at the next key frame
+            recording.readFrame(FrameRecorder.KEY_INTERVAL + 1, frame);
+            assertArrayEquals(frame(FrameRecorder.KEY_INTERVAL + 1), frame);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    // Frame n of a slowly changing scene
+    private static short[] frame(int n) {
+        short[] frame = new short[PIXELS];
+        for (int i = 0; i < PIXELS; i++) {
+            int x = i % WIDTH;
+            int y = i / WIDTH;
+            frame[i] = (short) (8000 + ((x + y + n) % (WIDTH + HEIGHT)) * 8);
+        }
+        return frame;
+    }
+
+    // One segment of FRAMES compressed frames, with frame corrupt's type byte broken
+    private static File record(int corrupt) throws IOException {
+        File dir = File.createTempFile("frames", "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("Cannot create " + dir);
+        }
+
+        FrameCodec codec = new FrameCodec(PIXELS, FrameRecorder.KEY_INTERVAL);
+        byte[] encoded = new byte[FrameCodec.maxEncodedSize(PIXELS)];
+        ByteBuffer segment = ByteBuffer.allocate(FRAMES * encoded.length);
+        ByteBuffer index = ByteBuffer.allocate(FrameRecorder.INDEX_HEADER_BYTES
+                + FRAMES * FrameRecorder.INDEX_ENTRY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        index.putInt(FrameRecorder.MAGIC);
+        index.putInt(FrameRecorder.VERSION);
+        index.putInt(WIDTH);
+        index.putInt(HEIGHT);
+        index.putInt(FrameRecorder.FRAMES_PER_SEGMENT);
+        index.putInt(FrameRecorder.CODEC_DELTA);
+        index.putLong(0);
+
+        for (int i = 0; i < FRAMES; i++) {
+            int offset = segment.position();
+            int length = codec.encode(frame(i), encoded, 0);
+            if (i == corrupt) {
+                encoded[0] = 0x7F;
+            }
+            segment.put(encoded, 0, length);
+
+            index.putLong(i);
+            index.putLong(i * 111000000L);
+            index.putShort((short) 8000);
+            index.putShort((short) 8200);
+            index.putInt(offset);
+            index.putInt(length);
+        }
+
+        write(new File(dir, FrameRecorder.INDEX_FILE), index.array(), index.position());
+        write(new File(dir, FrameRecorder.segmentName(0)), segment.array(), segment.position());
+        return dir;
+    }
+
+    private static void write(File path, byte[] data, int length) throws IOException {
+        FileOutputStream out = new FileOutputStream(path);
+        try {
+            out.write(data, 0, length);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void delete(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdkrawstub;
+
+/**
+ * Pool of fixed-size receive buffers handed from the reading thread to listeners.
+ *
+ * Buffers are allocated on first use, so a pool sized for the worst case only
+ * holds as many as the reader and listeners have had outstanding at once.
+ *
+ * A buffer taken with acquire() is owned once; retain() sets how many holders
+ * must release() it before it can be handed out again. When every pooled buffer
+ * is in use a fresh, untracked buffer is returned so reading never stalls on a
+ * slow or forgetful listener.
+ */
+public class BufferPool {
+    private final int bufferSize;
+    private final byte[][] buffers;
+    private final int[] refs;
+    private int allocated = 0;
+
+    public BufferPool(int bufferSize, int count) {
+        this.bufferSize = bufferSize;
+        buffers = new byte[count][];
+        refs = new int[count];
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public synchronized byte[] acquire() {
+        for (int i = 0; i < allocated; i++) {
+            if (refs[i] == 0) {
+                refs[i] = 1;
+                return buffers[i];
+            }
+        }
+        if (allocated < buffers.length) {
+            refs[allocated] = 1;
+            buffers[allocated] = new byte[bufferSize];
+            return buffers[allocated++];
+        }
+        return new byte[bufferSize];
+    }
+
+    // Set the number of release() calls needed before the buffer is free again
+    public synchronized void retain(byte[] buffer, int holders) {
+        int i = indexOf(buffer);
+        if (i >= 0) {
+            refs[i] = holders;
+        }
+    }
+
+    public synchronized void release(byte[] buffer) {
+        int i = indexOf(buffer);
+        if (i >= 0 && refs[i] > 0) {
+            refs[i]--;
+        }
+    }
+
+    private int indexOf(byte[] buffer) {
+        for (int i = 0; i < allocated; i++) {
+            if (buffers[i] == buffer) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -33,6 +33,8 @@ import android.os.Handler;
 import android.os.Message;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.widget.Button;
 import android.widget.EditText;
@@ -41,6 +43,9 @@ import android.widget.TextView;
 import com.motorola.mod.ModDevice;
 import com.motorola.mod.ModManager;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 public class MainActivity extends AppCompatActivity implements View.OnClickListener {
 
     private ModManagerInterface modManager; // for attach/detach and interface
@@ -50,6 +55,7 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     TextView rxText;    // Received text box
     EditText txText;    // Input text to send
     Button writeButton; // Execute send
+    MetricsOverlay metricsOverlay;
 
 
     @Override
@@ -62,6 +68,7 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         rxText = (TextView) findViewById(R.id.output_text);
         txText = (EditText) findViewById(R.id.input_text);
         writeButton = (Button)findViewById(R.id.write_button);
+        metricsOverlay = new MetricsOverlay(this);
     }
 
     @Override
@@ -73,12 +80,40 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     @Override
     protected void onPause() {
         super.onPause();
+        metricsOverlay.pause();
     }
 
     @Override
     protected void onResume() {
         super.onResume();
         initModManager();           // Connect ModManagerInterface service
+        metricsOverlay.resume();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_main, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_metrics) {
+            boolean show = !metricsOverlay.isVisible();
+            metricsOverlay.setVisible(show);
+            item.setChecked(show);
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    // Raw channel metrics are included in: adb shell dumpsys activity <package>
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        writer.print(prefix);
+        writer.println("Metrics:");
+        Metrics.get().dump(prefix + "  ", writer);
     }
 
     private void initModManager() {
@@ -154,8 +189,12 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
                     writeButton.setEnabled(true);
                     break;
                 case ModRawStub.MSG_RAW_DATA:
-                    String text = new String((byte[]) msg.obj);
+                    byte[] buffer = (byte[]) msg.obj;
+                    String text = new String(buffer, 0, msg.arg1);
                     rxText.setText(text);
+                    if (modRaw != null) {
+                        modRaw.releaseBuffer(buffer);
+                    }
                     break;
             }
         }
@@ -51,8 +51,9 @@ import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 
 public class ModRaw {
     protected Context context;
@@ -64,17 +65,34 @@ public class ModRaw {
     private static final int POLL_TYPE_EXIT = 2;
     private static final int EXIT_BYTE = 0xFF;
 
+    // Per-packet logging, keep off outside of debugging
+    private static final boolean DEBUG = false;
+
     private ModInterfaceDelegation pendingDevice;   // Raw Interface
-    private ParcelFileDescriptor parcelFD;          // Raw file descriptors
+    private RawTransport transport;                 // Raw file descriptors
     private FileDescriptor[] syncPipes;             // Multi-fd blocking
     private final Object pipeLock = new Object();   // Protect syncPipes
 
     private Thread receiveThread = null;            // Receive Raw from Mod
+    private StructPollfd[] pollfds;                 // Reused by every poll
+    private StructPollfd readRawFd;                 // Data on the raw channel
+    private StructPollfd syncFd;                    // Exit signal
     private HandlerThread sendingThread = null;     // Send Raw to Mod
     private FileOutputStream outputStream;          // Stream for Raw send to Mod
+    private FileChannel outputChannel;              // Batched writes to the Mod
     private Handler handler;                        // Handle send requests from UI
 
-    List<Handler> listeners = new ArrayList<>();
+    ListenerDispatcher listeners = new ListenerDispatcher();
+
+    // Raw channel metrics, see Metrics.report()
+    private final Metrics.Counter bytesIn = Metrics.get().counter("raw.bytes_in");
+    private final Metrics.Counter reads = Metrics.get().counter("raw.reads");
+    private final Metrics.Counter pollWakeups = Metrics.get().counter("raw.poll_wakeups");
+    private final Metrics.Counter bytesOut = Metrics.get().counter("raw.bytes_out");
+    private final Metrics.Counter writes = Metrics.get().counter("raw.writes");
+    private final Metrics.Gauge sendQueueDepth = Metrics.get().gauge("raw.send_queue");
+    private final Metrics.Histogram writeLatency = Metrics.get().histogram("raw.write");
+    private final Metrics.Histogram sendDelay = Metrics.get().histogram("raw.send_delay");
 
     public final static int MSG_RAW_IO_EXCEPTION = 0;
     public final static int MSG_RAW_REQUEST_PERMISSION = 1;
@@ -85,6 +103,15 @@ public class ModRaw {
     public ModRaw(Context c, ModManagerInterface modMgr) {
         context = c;
         modManager = modMgr;
+        listeners.setDroppable(MSG_RAW_DATA);
+        listeners.setDropCallback(new ListenerDispatcher.DropCallback() {
+            @Override
+            public void onDropped(Message msg) {
+                if (msg.what == MSG_RAW_DATA) {
+                    releaseBuffer((byte[]) msg.obj);
+                }
+            }
+        });
     }
 
     // This should be overridden to check for your expected VID/PID
@@ -92,8 +119,19 @@ public class ModRaw {
         return true;
     }
 
-    // Override this to parse your custom protocol
+    // Override this to parse your custom protocol. The buffer comes from the
+    // receive pool; call releaseBuffer() when done with it unless it is passed
+    // on with dispatchRawData().
     protected void onRawData(byte[] buffer, int length) {
+        dispatchRawData(buffer, length);
+    }
+
+    // Send MSG_RAW_DATA to the listeners. Each listener owns the buffer in msg.obj
+    // until it calls releaseBuffer(); copies dropped for a slow listener are
+    // released on its behalf.
+    protected void dispatchRawData(byte[] buffer, int length) {
+        bufferPool.retain(buffer, listeners.size());
+
         Message msg = Message.obtain();
         msg.what = MSG_RAW_DATA;
         msg.arg1 = length;
@@ -102,6 +140,11 @@ public class ModRaw {
         notifyListeners(msg);
     }
 
+    // Return a MSG_RAW_DATA buffer once it has been consumed
+    public void releaseBuffer(byte[] buffer) {
+        bufferPool.release(buffer);
+    }
+
     public boolean onModDevice(ModDevice d) {
         boolean ret = true;
         if (null == d) {
@@ -137,9 +180,9 @@ public class ModRaw {
         sendingThread = null;
         receiveThread = null;
 
-        if (parcelFD != null) try {
-            parcelFD.close();
-            parcelFD = null;
+        if (transport != null) try {
+            transport.close();
+            transport = null;
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -173,7 +216,7 @@ public class ModRaw {
         } else {
             Log.d(Constants.TAG, "openRawDeviceifAvailable - no raw device");
         }
-        return (parcelFD != null);
+        return (transport != null);
     }
 
     public void onPermissionGranted(boolean granted) {
@@ -188,34 +231,50 @@ public class ModRaw {
 
     private void getRawPfd(ModInterfaceDelegation device) {
         // Get RAW file description via ModManager, to read / write data.
-        parcelFD = modManager.openRawInterface(device,
+        ParcelFileDescriptor pfd = modManager.openRawInterface(device,
                 ParcelFileDescriptor.MODE_READ_WRITE);
-        if (parcelFD != null) {
-            try {
-                syncPipes = Os.pipe();
-            } catch (ErrnoException e) {
-                e.printStackTrace();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-            Log.d(Constants.TAG, "getRawPf PFD: " + parcelFD);
-
-            createSendingThread();
-            createReceivingThread();
-
-            if (null != sendingThread && null != receiveThread) {
-                Log.d(Constants.TAG, "RAW I/O created.");
-                onRawInterfaceReady();
-            }
+        if (pfd != null) {
+            openTransport(new PfdTransport(pfd));
         } else {
             Log.e(Constants.TAG, "getRawPfd PFD null ");
         }
     }
 
+    // Start raw I/O over t, onModDevice(null) closes it again
+    private void openTransport(RawTransport t) {
+        if (transport != null) {
+            Log.e(Constants.TAG, "openTransport - already open: " + transport);
+            return;
+        }
+        transport = t;
+        try {
+            syncPipes = Os.pipe();
+        } catch (ErrnoException e) {
+            e.printStackTrace();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        Log.d(Constants.TAG, "getRawPf transport: " + transport);
+
+        createSendingThread();
+        createReceivingThread();
+
+        if (null != sendingThread && null != receiveThread) {
+            Log.d(Constants.TAG, "RAW I/O created.");
+            onRawInterfaceReady();
+        }
+    }
+
     private void createSendingThread() {
         if (sendingThread == null) {
-            FileDescriptor fd = parcelFD.getFileDescriptor();
+            FileDescriptor fd = transport.getFileDescriptor();
             outputStream = new FileOutputStream(fd);
+            outputChannel = outputStream.getChannel();
+            synchronized (sendLock) {
+                Arrays.fill(sendQueue, null);
+                sendCount = 0;
+                sendScheduled = false;
+            }
             sendingThread = new HandlerThread("sendingThread");
             sendingThread.start();
             handler = new SendHandler(sendingThread.getLooper());
@@ -233,9 +292,8 @@ public class ModRaw {
             switch (msg.what) {
                 case SEND_MSG:
                     try {
-                        if (null != outputStream) {
-                            byte[] cmd = (byte[]) msg.obj;
-                            outputStream.write(cmd);
+                        if (null != outputChannel) {
+                            writeQueued();
                         }
                     } catch (IOException e) {
                         Log.e(Constants.TAG, "IOException while writing to raw file" + e);
@@ -249,24 +307,159 @@ public class ModRaw {
         }
     }
 
-    // Add Raw message to the SendHandler queue
+    // Pass as the key to sendRaw() for commands that must never be coalesced
+    public static final int NO_COALESCE = -1;
+
+    // Sized for a burst of small commands, larger ones are written on their own
+    private static final int SEND_BUFFER_BYTES = 4096;
+    private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(SEND_BUFFER_BYTES);
+
+    private final Object sendLock = new Object();   // Protect the send queue
+    private byte[][] sendQueue = new byte[16][];    // Commands not yet written
+    private int[] sendKeys = new int[16];           // Coalescing key per command
+    private int sendCount = 0;
+    private boolean sendScheduled = false;          // A SEND_MSG is pending
+    private long sendQueuedAt = 0;                  // When the pending SEND_MSG was sent
+    private byte[][] sendBatch = new byte[16][];    // Owned by the sending thread
+    private volatile boolean coalescing = false;
+
+    private volatile long sentCommands = 0;
+    private volatile long sendWrites = 0;
+    private volatile long coalescedCommands = 0;
+
+    // With coalescing on, a command queued with a key replaces a queued but not
+    // yet written command with the same key, so only the latest value is sent.
+    public void setCoalescing(boolean enabled) {
+        coalescing = enabled;
+    }
+
+    public boolean isCoalescing() {
+        return coalescing;
+    }
+
+    public long getSentCommands() {
+        return sentCommands;
+    }
+
+    // Number of writes to the raw channel, at most one per batch of commands
+    public long getSendWrites() {
+        return sendWrites;
+    }
+
+    public long getCoalescedCommands() {
+        return coalescedCommands;
+    }
+
+    // Add Raw message to the send queue
     protected void sendRaw(byte[] cmd) {
-        if (null != handler) {
-            Message msg = Message.obtain(handler, SEND_MSG);
-            msg.obj = cmd;
-            handler.sendMessage(msg);
+        sendRaw(cmd, NO_COALESCE);
+    }
+
+    // Add Raw message to the send queue. Commands queued while the sending
+    // thread is busy go out together, so the Mod must treat the channel as a
+    // byte stream rather than one command per read.
+    protected void sendRaw(byte[] cmd, int key) {
+        if (null == handler) {
+            return;
+        }
+        synchronized (sendLock) {
+            if (coalescing && key != NO_COALESCE) {
+                for (int i = 0; i < sendCount; i++) {
+                    if (sendKeys[i] == key) {
+                        sendQueue[i] = cmd;
+                        coalescedCommands++;
+                        return;
+                    }
+                }
+            }
+            if (sendCount == sendQueue.length) {
+                sendQueue = Arrays.copyOf(sendQueue, sendCount * 2);
+                sendKeys = Arrays.copyOf(sendKeys, sendCount * 2);
+            }
+            sendQueue[sendCount] = cmd;
+            sendKeys[sendCount] = key;
+            sendCount++;
+            sendQueueDepth.set(sendCount);
+
+            if (sendScheduled) {
+                return;
+            }
+            sendScheduled = true;
+            sendQueuedAt = System.nanoTime();
+        }
+        handler.sendEmptyMessage(SEND_MSG);
+    }
+
+    // Drain the send queue and write it with as few syscalls as possible
+    private void writeQueued() throws IOException {
+        int count;
+        long queuedAt;
+        synchronized (sendLock) {
+            count = sendCount;
+            queuedAt = sendQueuedAt;
+            if (sendBatch.length < count) {
+                sendBatch = new byte[sendQueue.length][];
+            }
+            System.arraycopy(sendQueue, 0, sendBatch, 0, count);
+            Arrays.fill(sendQueue, 0, count, null);
+            sendCount = 0;
+            sendScheduled = false;
+            sendQueueDepth.set(0);
+        }
+
+        sendBuffer.clear();
+        for (int i = 0; i < count; i++) {
+            byte[] cmd = sendBatch[i];
+            sendBatch[i] = null;
+            if (cmd.length > sendBuffer.remaining()) {
+                flushSendBuffer();
+            }
+            if (cmd.length > sendBuffer.capacity()) {
+                writeFully(ByteBuffer.wrap(cmd));
+            } else {
+                sendBuffer.put(cmd);
+            }
         }
+        flushSendBuffer();
+        sentCommands += count;
+        // From the first command of the batch being queued to all of it written
+        sendDelay.recordSince(queuedAt);
+    }
+
+    private void flushSendBuffer() throws IOException {
+        sendBuffer.flip();
+        if (sendBuffer.hasRemaining()) {
+            writeFully(sendBuffer);
+        }
+        sendBuffer.clear();
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        int length = buffer.remaining();
+        long start = System.nanoTime();
+        while (buffer.hasRemaining()) {
+            outputChannel.write(buffer);
+        }
+        writeLatency.recordSince(start);
+        writes.increment();
+        bytesOut.add(length);
+        sendWrites++;
     }
 
     // May be increased for your project
     public static int MAX_BYTES = 1024;
+    // A listener's full dispatch queue plus the buffer being read; listeners
+    // share each buffer, and droppable copies past the limit are released
+    private static final int POOL_BUFFERS = ListenerDispatcher.DEFAULT_QUEUE_LIMIT + 1;
+    private final BufferPool bufferPool = new BufferPool(MAX_BYTES, POOL_BUFFERS);
 
     private void createReceivingThread() {
         if (receiveThread != null) return;
+        createPollFds();
         receiveThread = new Thread() {
             @Override
             public void run() {
-                FileDescriptor fd = parcelFD.getFileDescriptor();
+                FileDescriptor fd = transport.getFileDescriptor();
                 FileInputStream inputStream = new FileInputStream(fd);
                 int ret = 0;
                 synchronized (pipeLock) {
@@ -274,15 +467,18 @@ public class ModRaw {
                         try {
                             // Poll on the exit pipe and the raw channel
                             int polltype = blockRead();
-                            Log.d(Constants.TAG, "Out of Block pollType:" + polltype);
+                            if (DEBUG) Log.d(Constants.TAG, "Out of Block pollType:" + polltype);
                             if (polltype == POLL_TYPE_READ_DATA) {
-                                Log.d(Constants.TAG, "Going to read from RAW");
-                                byte[] buffer = new byte[MAX_BYTES];
-                                ret = inputStream.read(buffer, 0, MAX_BYTES);
+                                byte[] buffer = bufferPool.acquire();
+                                ret = inputStream.read(buffer, 0, buffer.length);
                                 if (ret > 0) {
-                                    // Got raw data
-                                    Log.d(Constants.TAG, "Got raw data.");
+                                    reads.increment();
+                                    bytesIn.add(ret);
+                                    // Got raw data, ownership passes on with it
+                                    if (DEBUG) Log.d(Constants.TAG, "Got raw data: " + ret);
                                     onRawData(buffer, ret);
+                                } else {
+                                    bufferPool.release(buffer);
                                 }
                             } else if (polltype == POLL_TYPE_EXIT) {
                                 Log.d(Constants.TAG, "Exiting Read Thread.");
@@ -313,24 +509,28 @@ public class ModRaw {
         }
     }
 
-    private int blockRead() {
-        // Poll on the pipe to see whether signal to exit, or any data on raw fd to read.
-        StructPollfd[] pollfds = new StructPollfd[2];
+    // Set up the poll state once per reading thread, poll() refreshes revents
+    private void createPollFds() {
+        pollfds = new StructPollfd[2];
 
         // readRawFd will watch whether data is available on the raw channel.
-        StructPollfd readRawFd = new StructPollfd();
+        readRawFd = new StructPollfd();
         pollfds[0] = readRawFd;
-        readRawFd.fd = parcelFD.getFileDescriptor();
+        readRawFd.fd = transport.getFileDescriptor();
         readRawFd.events = (short) (OsConstants.POLLIN | OsConstants.POLLHUP);
 
         // syncFd will watch whether any exit signal.
-        StructPollfd syncFd = new StructPollfd();
+        syncFd = new StructPollfd();
         pollfds[1] = syncFd;
         syncFd.fd = syncPipes[0];
         syncFd.events = (short) OsConstants.POLLIN;
+    }
 
+    private int blockRead() {
+        // Poll on the pipe to see whether signal to exit, or any data on raw fd to read.
         try {
             int ret = Os.poll(pollfds, -1);
+            pollWakeups.increment();
 
             if (ret > 0) {
                 if (syncFd.revents == OsConstants.POLLIN) {
@@ -364,26 +564,21 @@ public class ModRaw {
 
 
     public void registerListener(Handler listener) {
-        listeners.add(listener);
+        listeners.register(listener);
+    }
+    // Delivery and backpressure counters for the registered listeners
+    public ListenerDispatcher getListenerDispatcher() {
+        return listeners;
     }
     protected void notifyListeners(int what) {
-        for (Handler handler : listeners) {
-            handler.sendEmptyMessage(what);
-        }
+        listeners.send(what);
     }
+    // Each listener gets its own copy, delivered on its next frame
     protected void notifyListeners(Message msg) {
-        for (Handler handler : listeners) {
-            handler.sendMessage(msg);
-        }
+        listeners.send(msg);
     }
     protected void notifyListeners(int what, int arg) {
-        Message msg = Message.obtain();
-        msg.what = what;
-        msg.arg1 = arg;
-
-        for (Handler handler : listeners) {
-            handler.sendMessage(msg);
-        }
+        listeners.send(what, arg);
     }
 
 
@@ -29,7 +29,6 @@
 package com.motorola.samples.mdkrawstub;
 
 import android.content.Context;
-import android.os.Message;
 
 import com.motorola.mod.ModDevice;
 
@@ -54,12 +53,7 @@ public class ModRawStub extends ModRaw {
     /* Handle and custom protocol/formatting of your Raw data received */
     @Override
     protected void onRawData(byte[] buffer, int length) {
-        Message msg = Message.obtain();
-        msg.what = MSG_RAW_DATA;
-        msg.arg1 = length;
-        msg.obj = buffer;
-
-        notifyListeners(msg);
+        dispatchRawData(buffer, length);
     }
 
     /* Handle any custom protocol/formatting of your Raw data before send */
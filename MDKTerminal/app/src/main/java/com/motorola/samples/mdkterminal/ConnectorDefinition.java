@@ -59,8 +59,7 @@ public class ConnectorDefinition implements AdapterView.OnItemSelectedListener,
         this.connector = connectorPort;
     }
 
-    public static JSONCreator queryDefinition() {
-        JSONCreator json = new JSONCreator();
+    public static MessageCreator queryDefinition(MessageCreator json) {
         json.createCmd("read", JSONCreator.COMMAND);
         for (int i = 0; i < portArray.length; i++) {
             json.addConfig(portArray[i], pinArray[i],
@@ -118,7 +117,7 @@ public class ConnectorDefinition implements AdapterView.OnItemSelectedListener,
         interruptView.setVisibility(connector.getDirection() == 1 ? View.INVISIBLE : View.VISIBLE);
     }
 
-    public void createConfig(JSONCreator json) {
+    public void createConfig(MessageCreator json) {
         if (enabled) {
             json.addConfig(connector.port, connector.pin,
                     levelButton.isChecked() ? 1 : 0,
@@ -32,5 +32,8 @@ public class Constants {
     public static final String TAG = "MDKTerminal";
     public static final int INVALID_ID = -1;
 
+    /** Terminal lines kept on screen, older ones are dropped */
+    public static final int SCROLLBACK_LINES = 2000;
+
     public static String URL_PRIVACY_POLICY = "https://motorola.com/device-privacy";
 }
@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdkterminal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Scripted stand-in for a Mod's firmware on the far end of a raw channel.
+ *
+ * Bytes written by the app are handed to Script.onReceive() on a receive thread;
+ * Script.run() is called once on a transmit thread for scripts that stream on
+ * their own. Only java.io is used, so scripts also run on a plain JVM.
+ */
+public class FakeMod {
+    private static final int READ_BYTES = 1024;
+
+    private final InputStream input;
+    private final OutputStream output;
+    private final Script script;
+    private final Object writeLock = new Object();
+
+    private volatile boolean running = false;
+    private Thread rxThread;
+    private Thread txThread;
+
+    public static abstract class Script {
+        // Transmit thread; return when done or once mod.isRunning() turns false
+        public void run(FakeMod mod) throws IOException, InterruptedException {
+        }
+
+        // Receive thread; one call per chunk read from the app
+        public void onReceive(FakeMod mod, byte[] data, int length) throws IOException {
+        }
+    }
+
+    public FakeMod(InputStream in, OutputStream out, Script script) {
+        input = in;
+        output = out;
+        this.script = script;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+
+        rxThread = new Thread("FakeModRx") {
+            @Override
+            public void run() {
+                byte[] buffer = new byte[READ_BYTES];
+                try {
+                    int len;
+                    while (running && (len = input.read(buffer, 0, buffer.length)) >= 0) {
+                        if (len > 0) {
+                            script.onReceive(FakeMod.this, buffer, len);
+                        }
+                    }
+                } catch (IOException e) {
+                    // Channel closed
+                }
+                running = false;
+            }
+        };
+        txThread = new Thread("FakeModTx") {
+            @Override
+            public void run() {
+                try {
+                    script.run(FakeMod.this);
+                } catch (IOException e) {
+                    // Channel closed
+                } catch (InterruptedException e) {
+                    // Stopped
+                }
+            }
+        };
+        rxThread.start();
+        txThread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (txThread != null) {
+            txThread.interrupt();
+            txThread = null;
+        }
+        rxThread = null;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Send bytes to the app, may be called from either thread
+    public void write(byte[] data, int offset, int length) throws IOException {
+        synchronized (writeLock) {
+            output.write(data, offset, length);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FakeMod " + script.getClass().getSimpleName();
+    }
+
+    // Send back everything the app writes
+    public static class EchoScript extends Script {
+        @Override
+        public void onReceive(FakeMod mod, byte[] data, int length) throws IOException {
+            mod.write(data, 0, length);
+        }
+    }
+
+    // Play a captured byte stream back in fixed chunks, optionally paced and looped
+    public static class ReplayScript extends Script {
+        private final byte[] capture;
+        private final int chunkBytes;
+        private final long intervalMs;
+        private final boolean loop;
+
+        public ReplayScript(byte[] capture, int chunkBytes, long intervalMs, boolean loop) {
+            this.capture = capture;
+            this.chunkBytes = chunkBytes;
+            this.intervalMs = intervalMs;
+            this.loop = loop;
+        }
+
+        @Override
+        public void run(FakeMod mod) throws IOException, InterruptedException {
+            do {
+                for (int offset = 0; offset < capture.length && mod.isRunning();
+                     offset += chunkBytes) {
+                    mod.write(capture, offset, Math.min(chunkBytes, capture.length - offset));
+                    if (intervalMs > 0) {
+                        Thread.sleep(intervalMs);
+                    }
+                }
+            } while (loop && mod.isRunning());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdkterminal;
+
+/**
+ * Formats bytes as " 0x12 0xab ..." through a nibble table, instead of a
+ * String.format() call per byte.
+ */
+public class HexFormatter {
+    private static final char[] NIBBLES = "0123456789abcdef".toCharArray();
+    private static final int CHARS_PER_BYTE = 5;
+
+    private char[] chars = new char[256];
+
+    // Not thread safe, the character buffer is reused between calls
+    public String format(String prefix, byte[] data, int offset, int length) {
+        int needed = prefix.length() + length * CHARS_PER_BYTE;
+        if (chars.length < needed) {
+            chars = new char[needed];
+        }
+        prefix.getChars(0, prefix.length(), chars, 0);
+        int pos = prefix.length();
+        for (int i = offset; i < offset + length; i++) {
+            int b = data[i] & 0xFF;
+            chars[pos++] = ' ';
+            chars[pos++] = '0';
+            chars[pos++] = 'x';
+            chars[pos++] = NIBBLES[b >> 4];
+            chars[pos++] = NIBBLES[b & 0xF];
+        }
+        return new String(chars, 0, pos);
+    }
+}
@@ -28,63 +28,75 @@
 
 package com.motorola.samples.mdkterminal;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
-public class JSONCreator {
+public class JSONCreator implements MessageCreator {
     public static final String TERM = "term";
     public static final String COMMAND = "command";
     public static final String GPIOS = "gpios";
     public static final String DATA = "data";
     public static final String STATUS = "status";
     public static final String WRITE = "write";
+    // Protocol switch commands, the Mod echoes the command to accept it
+    public static final String BINARY = "binary";
+    public static final String JSON = "json";
 
-    private JSONObject root;
-    private JSONArray gpios;
+    private final JSONWriter root = new JSONWriter();
+    private final JSONWriter gpios = new JSONWriter();
+    private boolean configGenerated;
 
 
     public JSONCreator() {
-        root = new JSONObject();
-        gpios = new JSONArray();
+        reset();
+    }
+
+    @Override
+    public void reset() {
+        root.reset();
+        root.beginObject();
+        gpios.reset();
+        gpios.beginArray();
+        configGenerated = false;
     }
 
     public String toString() {
-        return root.toString();
+        return new String(root.getBuffer(), 0, root.length(), StandardCharsets.UTF_8) + "}";
     }
 
-    public void createCmd(String cmd, String tag) {
-        JSONObject json = new JSONObject();
-        try {
-            json.put("data", cmd);
-            json.put("size", cmd.length());
-            json.put("sender", "app");
+    @Override
+    public byte[] toByteArray() {
+        byte[] bytes = Arrays.copyOf(root.getBuffer(), root.length() + 1);
+        bytes[root.length()] = '}';
+        return bytes;
+    }
 
-            root.put(tag, json);
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
+    @Override
+    public void createCmd(String cmd, String tag) {
+        root.name(tag).beginObject()
+                .name(DATA).value(cmd)
+                .name("size").value(cmd.length())
+                .name("sender").value("app")
+                .endObject();
     }
 
+    @Override
     public void addConfig(String port, int pin, int level, String direction) {
-        JSONObject gpio = new JSONObject();
-        try {
-            gpio.put("port", port);
-            gpio.put("pin", pin);
-            gpio.put("level", level);
-            gpio.put("direction", direction);
-
-            gpios.put(gpio);
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
+        gpios.beginObject()
+                .name("port").value(port)
+                .name("pin").value(pin)
+                .name("level").value(level)
+                .name("direction").value(direction)
+                .endObject();
     }
 
+    @Override
     public void generateConfig() {
-        try {
-            root.put(GPIOS, gpios);
-        } catch (JSONException e) {
-            e.printStackTrace();
+        if (configGenerated) {
+            return;
         }
+        configGenerated = true;
+        gpios.endArray();
+        root.name(GPIOS).raw(gpios.getBuffer(), 0, gpios.length());
     }
 }
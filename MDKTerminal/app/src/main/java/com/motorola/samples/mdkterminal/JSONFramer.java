@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdkterminal;
+
+/**
+ * Splits a raw byte stream into complete top-level JSON objects.
+ *
+ * Bytes are fed as they are read, with no assumption about where reads split
+ * messages. Object boundaries are found by tracking brace depth, skipping
+ * braces inside strings and escapes. Bytes between objects are ignored.
+ */
+public class JSONFramer implements MessageFramer {
+    public interface Listener {
+        // data[0..length) holds one complete object; data is reused after return
+        public void onObject(byte[] data, int length);
+    }
+
+    // Larger objects are dropped rather than growing without bound
+    public static final int MAX_OBJECT_BYTES = 64 * 1024;
+
+    private final Listener listener;
+    private byte[] buffer = new byte[1024];
+    private int length = 0;
+    private int depth = 0;
+    private boolean inString = false;
+    private boolean escape = false;
+    private boolean overflow = false;
+    private int dropped = 0;
+
+    public JSONFramer(Listener listener) {
+        this.listener = listener;
+    }
+
+    // Number of objects dropped for exceeding MAX_OBJECT_BYTES
+    public int getDroppedCount() {
+        return dropped;
+    }
+
+    @Override
+    public boolean isIdle() {
+        return depth == 0;
+    }
+
+    @Override
+    public void reset() {
+        length = 0;
+        depth = 0;
+        inString = false;
+        escape = false;
+        overflow = false;
+    }
+
+    @Override
+    public int feed(byte[] data, int offset, int count) {
+        int end = offset + count;
+        for (int i = offset; i < end; i++) {
+            byte b = data[i];
+
+            if (depth == 0) {
+                // Between objects, wait for the next opening brace
+                if (b != '{') {
+                    continue;
+                }
+                length = 0;
+                overflow = false;
+            }
+            append(b);
+
+            if (inString) {
+                if (escape) {
+                    escape = false;
+                } else if (b == '\\') {
+                    escape = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+                if (depth == 0) {
+                    if (overflow) {
+                        dropped++;
+                    } else {
+                        listener.onObject(buffer, length);
+                    }
+                    length = 0;
+                    return i + 1 - offset;
+                }
+            }
+        }
+        return count;
+    }
+
+    private void append(byte b) {
+        if (overflow) {
+            return;
+        }
+        if (length == buffer.length) {
+            if (length >= MAX_OBJECT_BYTES) {
+                overflow = true;
+                return;
+            }
+            byte[] grown = new byte[Math.min(buffer.length * 2, MAX_OBJECT_BYTES)];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+        buffer[length++] = b;
+    }
+}
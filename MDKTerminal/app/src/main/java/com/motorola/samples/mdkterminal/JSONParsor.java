@@ -28,67 +28,154 @@
 
 package com.motorola.samples.mdkterminal;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 
+/**
+ * Reads one message of the term/command/gpios schema in a single pass.
+ *
+ * Object-valued root tags keep only their "data" string, array-valued ones
+ * are read as connector ports. Anything else is skipped. Malformed or
+ * truncated input leaves no tags at all.
+ */
 public class JSONParsor {
-    private JSONObject root;
+    private final ArrayList<String> tags = new ArrayList<>(2);
+    private final ArrayList<String> datas = new ArrayList<>(2);
+    private final ArrayList<String> arrayTags = new ArrayList<>(1);
+    private final ArrayList<ArrayList<ConnectorPort>> arrays = new ArrayList<>(1);
 
 
     public JSONParsor(String json) {
-        try {
-            root = new JSONObject(json);
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
+        this(json.getBytes(StandardCharsets.UTF_8));
     }
 
-    public boolean hasTag(String tag) {
-        JSONObject obj = null;
-        try {
-            obj = root.getJSONObject(tag);
-        } catch (JSONException e) {
-            e.printStackTrace();
-            obj = null;
+    public JSONParsor(byte[] json) {
+        this(json, 0, json.length);
+    }
+
+    public JSONParsor(byte[] json, int offset, int length) {
+        if (!parse(new JSONReader(json, offset, length))) {
+            tags.clear();
+            datas.clear();
+            arrayTags.clear();
+            arrays.clear();
         }
+    }
 
-        return obj != null;
+    public boolean hasTag(String tag) {
+        return tags.contains(tag);
     }
 
     public String getData(String tag) {
-        try {
-            JSONObject obj = root.getJSONObject(tag);
-            return obj.getString(JSONCreator.DATA);
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
-
-        return null;
+        int i = tags.indexOf(tag);
+        return i >= 0 ? datas.get(i) : null;
     }
 
     public ArrayList<ConnectorPort> getConnectorPortArray(String tag) {
-        ArrayList<ConnectorPort> ports = null;
-        try {
-            JSONArray array = root.getJSONArray(tag);
-            ports = new ArrayList<>();
-            for (int i = 0; i < array.length(); i++) {
-                JSONObject obj = array.getJSONObject(i);
+        int i = arrayTags.indexOf(tag);
+        return i >= 0 ? arrays.get(i) : null;
+    }
+
+    private boolean parse(JSONReader reader) {
+        if (reader.next() != JSONReader.BEGIN_OBJECT) {
+            return false;
+        }
+        int token;
+        while ((token = reader.next()) == JSONReader.NAME) {
+            String tag = reader.getString();
+            token = reader.next();
+            if (token == JSONReader.BEGIN_OBJECT) {
+                if (!readData(reader, tag)) {
+                    return false;
+                }
+            } else if (token == JSONReader.BEGIN_ARRAY) {
+                if (!readPorts(reader, tag)) {
+                    return false;
+                }
+            } else if (!reader.skipValue(token)) {
+                return false;
+            }
+        }
+        return token == JSONReader.END_OBJECT;
+    }
 
-                String name = obj.getString("port");
-                int pin = obj.getInt("pin");
-                int level = obj.getInt("level");
-                String direct = obj.getString("direction");
-                ConnectorPort port = new ConnectorPort(name, pin, level, direct);
-                ports.add(port);
+    // Read the rest of a tag object, keeping its "data" value
+    private boolean readData(JSONReader reader, String tag) {
+        String data = null;
+        int token;
+        while ((token = reader.next()) == JSONReader.NAME) {
+            boolean isData = reader.stringEquals(JSONCreator.DATA);
+            token = reader.next();
+            if (isData && token == JSONReader.STRING) {
+                data = reader.getString();
+            } else if (!reader.skipValue(token)) {
+                return false;
             }
-        } catch (JSONException e) {
-            e.printStackTrace();
-            ports = null;
         }
+        if (token != JSONReader.END_OBJECT) {
+            return false;
+        }
+        tags.add(tag);
+        datas.add(data);
+        return true;
+    }
 
-        return ports;
+    // Read the rest of an array, kept as ports only if every entry is a complete port
+    private boolean readPorts(JSONReader reader, String tag) {
+        ArrayList<ConnectorPort> ports = new ArrayList<>();
+        boolean complete = true;
+        int token;
+        while ((token = reader.next()) != JSONReader.END_ARRAY) {
+            if (token != JSONReader.BEGIN_OBJECT) {
+                complete = false;
+                if (!reader.skipValue(token)) {
+                    return false;
+                }
+                continue;
+            }
+
+            String name = null;
+            String direct = null;
+            int pin = 0;
+            int level = 0;
+            int found = 0;
+            while ((token = reader.next()) == JSONReader.NAME) {
+                int field = reader.stringEquals("port") ? 1
+                        : reader.stringEquals("pin") ? 2
+                        : reader.stringEquals("level") ? 4
+                        : reader.stringEquals("direction") ? 8 : 0;
+                token = reader.next();
+                if ((field == 1 || field == 8) && token == JSONReader.STRING) {
+                    if (field == 1) {
+                        name = reader.getString();
+                    } else {
+                        direct = reader.getString();
+                    }
+                    found |= field;
+                } else if ((field == 2 || field == 4) && token == JSONReader.NUMBER) {
+                    if (field == 2) {
+                        pin = reader.getInt();
+                    } else {
+                        level = reader.getInt();
+                    }
+                    found |= field;
+                } else if (!reader.skipValue(token)) {
+                    return false;
+                }
+            }
+            if (token != JSONReader.END_OBJECT) {
+                return false;
+            }
+            if (found == 0xF) {
+                ports.add(new ConnectorPort(name, pin, level, direct));
+            } else {
+                complete = false;
+            }
+        }
+        if (complete) {
+            arrayTags.add(tag);
+            arrays.add(ports);
+        }
+        return true;
     }
 }
@@ -0,0 +1,298 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdkterminal;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Pull-style JSON tokenizer over a UTF-8 byte range.
+ *
+ * next() returns one token at a time; a string followed by ':' is reported as
+ * NAME. Malformed or truncated input yields ERROR instead of throwing, so
+ * callers check the token type rather than catching exceptions. Names can be
+ * compared without decoding them into Strings.
+ */
+public class JSONReader {
+    public static final int END_DOCUMENT = 0;
+    public static final int BEGIN_OBJECT = 1;
+    public static final int END_OBJECT = 2;
+    public static final int BEGIN_ARRAY = 3;
+    public static final int END_ARRAY = 4;
+    public static final int NAME = 5;
+    public static final int STRING = 6;
+    public static final int NUMBER = 7;
+    public static final int BOOLEAN = 8;
+    public static final int NULL = 9;
+    public static final int ERROR = -1;
+
+    private final byte[] data;
+    private final int end;
+    private int pos;
+
+    // Current STRING, NAME or NUMBER token, as a byte range
+    private int tokenStart;
+    private int tokenEnd;
+    private boolean tokenEscaped;
+    private boolean tokenTrue;
+
+    public JSONReader(byte[] data, int offset, int length) {
+        this.data = data;
+        this.pos = offset;
+        this.end = offset + length;
+    }
+
+    public int next() {
+        skipSeparators();
+        if (pos >= end) {
+            return END_DOCUMENT;
+        }
+        byte b = data[pos++];
+        switch (b) {
+            case '{':
+                return BEGIN_OBJECT;
+            case '}':
+                return END_OBJECT;
+            case '[':
+                return BEGIN_ARRAY;
+            case ']':
+                return END_ARRAY;
+            case '"':
+                if (!readString()) {
+                    return ERROR;
+                }
+                skipWhitespace();
+                if (pos < end && data[pos] == ':') {
+                    pos++;
+                    return NAME;
+                }
+                return STRING;
+            case 't':
+                tokenTrue = true;
+                return literal("rue") ? BOOLEAN : ERROR;
+            case 'f':
+                tokenTrue = false;
+                return literal("alse") ? BOOLEAN : ERROR;
+            case 'n':
+                return literal("ull") ? NULL : ERROR;
+            default:
+                if (b == '-' || (b >= '0' && b <= '9')) {
+                    tokenStart = pos - 1;
+                    while (pos < end && isNumberByte(data[pos])) {
+                        pos++;
+                    }
+                    tokenEnd = pos;
+                    return NUMBER;
+                }
+                return ERROR;
+        }
+    }
+
+    /**
+     * Skip the rest of a value whose first token was just returned by next().
+     * Returns false if the input ended or was malformed.
+     */
+    public boolean skipValue(int token) {
+        if (token != BEGIN_OBJECT && token != BEGIN_ARRAY) {
+            return token != ERROR && token != END_DOCUMENT;
+        }
+        int depth = 1;
+        while (depth > 0) {
+            int t = next();
+            if (t == BEGIN_OBJECT || t == BEGIN_ARRAY) {
+                depth++;
+            } else if (t == END_OBJECT || t == END_ARRAY) {
+                depth--;
+            } else if (t == ERROR || t == END_DOCUMENT) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Compare the current NAME or STRING to an ASCII s without allocating */
+    public boolean stringEquals(String s) {
+        if (tokenEscaped) {
+            return s.equals(getString());
+        }
+        int len = tokenEnd - tokenStart;
+        if (len != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (data[tokenStart + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** The current NAME or STRING, decoded */
+    public String getString() {
+        if (!tokenEscaped) {
+            return new String(data, tokenStart, tokenEnd - tokenStart, StandardCharsets.UTF_8);
+        }
+        StringBuilder sb = new StringBuilder(tokenEnd - tokenStart);
+        int run = tokenStart;
+        int i = tokenStart;
+        while (i < tokenEnd) {
+            if (data[i] != '\\') {
+                i++;
+                continue;
+            }
+            if (i > run) {
+                sb.append(new String(data, run, i - run, StandardCharsets.UTF_8));
+            }
+            byte e = data[i + 1];
+            i += 2;
+            switch (e) {
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'u':
+                    sb.append((char) parseHex(i, 4));
+                    i += 4;
+                    break;
+                default:
+                    // \" \\ \/
+                    sb.append((char) e);
+                    break;
+            }
+            run = i;
+        }
+        if (tokenEnd > run) {
+            sb.append(new String(data, run, tokenEnd - run, StandardCharsets.UTF_8));
+        }
+        return sb.toString();
+    }
+
+    /** The current NUMBER as an int, any fraction is dropped */
+    public int getInt() {
+        int i = tokenStart;
+        boolean negative = false;
+        if (i < tokenEnd && data[i] == '-') {
+            negative = true;
+            i++;
+        }
+        int value = 0;
+        while (i < tokenEnd && data[i] >= '0' && data[i] <= '9') {
+            value = value * 10 + (data[i] - '0');
+            i++;
+        }
+        return negative ? -value : value;
+    }
+
+    public boolean getBoolean() {
+        return tokenTrue;
+    }
+
+    // Reads up to the closing quote, the opening one is already consumed
+    private boolean readString() {
+        tokenStart = pos;
+        tokenEscaped = false;
+        while (pos < end) {
+            byte b = data[pos];
+            if (b == '"') {
+                tokenEnd = pos++;
+                return true;
+            }
+            if (b == '\\') {
+                tokenEscaped = true;
+                int skip = pos + 1 < end && data[pos + 1] == 'u' ? 6 : 2;
+                if (pos + skip > end) {
+                    return false;
+                }
+                pos += skip;
+            } else {
+                pos++;
+            }
+        }
+        return false;
+    }
+
+    private boolean literal(String rest) {
+        if (pos + rest.length() > end) {
+            return false;
+        }
+        for (int i = 0; i < rest.length(); i++) {
+            if (data[pos + i] != rest.charAt(i)) {
+                return false;
+            }
+        }
+        pos += rest.length();
+        return true;
+    }
+
+    private int parseHex(int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int c = data[i];
+            int digit = c >= 'a' ? c - 'a' + 10 : c >= 'A' ? c - 'A' + 10 : c - '0';
+            value = (value << 4) | (digit & 0xF);
+        }
+        return value;
+    }
+
+    private void skipSeparators() {
+        while (pos < end) {
+            byte b = data[pos];
+            if (b == ',' || b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == 0) {
+                pos++;
+            } else {
+                break;
+            }
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < end) {
+            byte b = data[pos];
+            if (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                pos++;
+            } else {
+                break;
+            }
+        }
+    }
+
+    private static boolean isNumberByte(byte b) {
+        return (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E';
+    }
+}
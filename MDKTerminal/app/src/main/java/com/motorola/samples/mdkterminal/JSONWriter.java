@@ -0,0 +1,234 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdkterminal;
+
+import java.util.Arrays;
+
+/**
+ * Writes compact JSON straight into a reusable UTF-8 byte buffer.
+ *
+ * Commas and colons are placed automatically. Nothing is allocated per value
+ * once the buffer has grown to the size of a typical message; reset() makes
+ * the writer ready for the next message.
+ */
+public class JSONWriter {
+    private static final int MAX_DEPTH = 16;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private byte[] buffer;
+    private int length = 0;
+    private final boolean[] first = new boolean[MAX_DEPTH];
+    private int depth = 0;
+    private boolean afterName = false;
+
+    public JSONWriter() {
+        this(256);
+    }
+
+    public JSONWriter(int capacity) {
+        buffer = new byte[capacity];
+    }
+
+    public void reset() {
+        length = 0;
+        depth = 0;
+        afterName = false;
+    }
+
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public JSONWriter beginObject() {
+        return open('{');
+    }
+
+    public JSONWriter endObject() {
+        return close('}');
+    }
+
+    public JSONWriter beginArray() {
+        return open('[');
+    }
+
+    public JSONWriter endArray() {
+        return close(']');
+    }
+
+    public JSONWriter name(String name) {
+        separate();
+        writeString(name);
+        put((byte) ':');
+        afterName = true;
+        return this;
+    }
+
+    public JSONWriter value(String value) {
+        separate();
+        if (value == null) {
+            writeAscii("null");
+        } else {
+            writeString(value);
+        }
+        return this;
+    }
+
+    public JSONWriter value(int value) {
+        separate();
+        if (value == Integer.MIN_VALUE) {
+            writeAscii("-2147483648");
+            return this;
+        }
+        if (value < 0) {
+            put((byte) '-');
+            value = -value;
+        }
+        int start = length;
+        do {
+            put((byte) ('0' + value % 10));
+            value /= 10;
+        } while (value != 0);
+        // Digits went in backwards
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            byte b = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = b;
+        }
+        return this;
+    }
+
+    // Append an already encoded fragment, e.g. a nested writer's output
+    public JSONWriter raw(byte[] data, int offset, int count) {
+        separate();
+        ensure(count);
+        System.arraycopy(data, offset, buffer, length, count);
+        length += count;
+        return this;
+    }
+
+    private JSONWriter open(char c) {
+        separate();
+        if (depth < MAX_DEPTH) {
+            first[depth] = true;
+        }
+        depth++;
+        put((byte) c);
+        return this;
+    }
+
+    private JSONWriter close(char c) {
+        depth--;
+        put((byte) c);
+        return this;
+    }
+
+    // Comma between siblings, nothing after a name
+    private void separate() {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0 && depth <= MAX_DEPTH) {
+            if (first[depth - 1]) {
+                first[depth - 1] = false;
+            } else {
+                put((byte) ',');
+            }
+        }
+    }
+
+    private void writeString(String s) {
+        put((byte) '"');
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                put((byte) '\\');
+                put((byte) c);
+            } else if (c < 0x20) {
+                switch (c) {
+                    case '\n':
+                        writeAscii("\\n");
+                        break;
+                    case '\r':
+                        writeAscii("\\r");
+                        break;
+                    case '\t':
+                        writeAscii("\\t");
+                        break;
+                    default:
+                        writeAscii("\\u00");
+                        put(HEX[c >> 4]);
+                        put(HEX[c & 0xF]);
+                        break;
+                }
+            } else if (c < 0x80) {
+                put((byte) c);
+            } else if (c < 0x800) {
+                put((byte) (0xC0 | (c >> 6)));
+                put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                put((byte) (0xF0 | (cp >> 18)));
+                put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                put((byte) (0x80 | (cp & 0x3F)));
+            } else {
+                put((byte) (0xE0 | (c >> 12)));
+                put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        put((byte) '"');
+    }
+
+    private void writeAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            put((byte) s.charAt(i));
+        }
+    }
+
+    private void put(byte b) {
+        if (length == buffer.length) {
+            ensure(1);
+        }
+        buffer[length++] = b;
+    }
+
+    private void ensure(int count) {
+        if (length + count > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + count));
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdkterminal;
+
+import android.os.Handler;
+import android.os.Message;
+import android.view.Choreographer;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers messages to listener Handlers at most once per display frame.
+ *
+ * Any thread may send(); every listener gets its own copy of the message in a
+ * per-listener queue. The first message after a delivery posts one Runnable to
+ * the listener, which waits for the next vsync with a Choreographer frame
+ * callback and then dispatches everything queued so far. A burst of reads thus
+ * costs the listener's looper one message per frame instead of one per read.
+ *
+ * Message types marked droppable are discarded oldest first while a listener
+ * is more than the queue limit behind; other messages are always delivered.
+ */
+public class ListenerDispatcher {
+    public static final int DEFAULT_QUEUE_LIMIT = 256;
+
+    public interface DropCallback {
+        /** Called on the sending thread for each discarded copy, before it is recycled */
+        public void onDropped(Message msg);
+    }
+
+    private final List<Sink> sinks = new CopyOnWriteArrayList<>();
+    private final BitSet droppable = new BitSet();
+    private volatile int queueLimit = DEFAULT_QUEUE_LIMIT;
+    private volatile DropCallback dropCallback;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+    private volatile int maxBacklog = 0;
+
+    public void register(Handler handler) {
+        sinks.add(new Sink(handler));
+    }
+
+    /** Remove all listeners, undelivered messages are dropped */
+    public void clear() {
+        for (Sink sink : sinks) {
+            sink.close();
+        }
+        sinks.clear();
+    }
+
+    public int size() {
+        return sinks.size();
+    }
+
+    /** Allow messages with this what to be dropped when a listener falls behind */
+    public synchronized void setDroppable(int what) {
+        droppable.set(what);
+    }
+
+    public void setQueueLimit(int limit) {
+        queueLimit = Math.max(1, limit);
+    }
+
+    public void setDropCallback(DropCallback callback) {
+        dropCallback = callback;
+    }
+
+    public void send(int what) {
+        send(what, 0);
+    }
+
+    public void send(int what, int arg) {
+        Message msg = Message.obtain();
+        msg.what = what;
+        msg.arg1 = arg;
+        send(msg);
+    }
+
+    /** Queue a copy of msg for every listener, msg itself is recycled */
+    public void send(Message msg) {
+        sent.incrementAndGet();
+        for (Sink sink : sinks) {
+            sink.enqueue(Message.obtain(msg));
+        }
+        msg.recycle();
+    }
+
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    // Number of frame batches delivered, across all listeners
+    public long getFrameCount() {
+        return frames.get();
+    }
+
+    // Most messages any listener has had waiting at once
+    public int getMaxBacklog() {
+        return maxBacklog;
+    }
+
+    // Messages currently waiting, across all listeners
+    public int getBacklog() {
+        int backlog = 0;
+        for (Sink sink : sinks) {
+            backlog += sink.backlog();
+        }
+        return backlog;
+    }
+
+    private synchronized boolean isDroppable(int what) {
+        return droppable.get(what);
+    }
+
+    private void drop(Message msg) {
+        dropped.incrementAndGet();
+        DropCallback callback = dropCallback;
+        if (callback != null) {
+            callback.onDropped(msg);
+        }
+        msg.recycle();
+    }
+
+    private class Sink implements Runnable, Choreographer.FrameCallback {
+        private final Handler handler;
+        private ArrayDeque<Message> pending = new ArrayDeque<>();
+        private ArrayDeque<Message> draining = new ArrayDeque<>();
+        private boolean scheduled = false;
+        private volatile boolean closed = false;
+
+        Sink(Handler handler) {
+            this.handler = handler;
+        }
+
+        void enqueue(Message msg) {
+            boolean schedule;
+            synchronized (this) {
+                if (closed) {
+                    drop(msg);
+                    return;
+                }
+                pending.add(msg);
+                if (pending.size() > queueLimit) {
+                    trim();
+                }
+                if (pending.size() > maxBacklog) {
+                    maxBacklog = pending.size();
+                }
+                schedule = !scheduled;
+                scheduled = true;
+            }
+            if (schedule) {
+                handler.post(this);
+            }
+        }
+
+        // Drop the oldest droppable message, if there is one
+        private void trim() {
+            Iterator<Message> it = pending.iterator();
+            while (it.hasNext()) {
+                Message msg = it.next();
+                if (isDroppable(msg.what)) {
+                    it.remove();
+                    drop(msg);
+                    return;
+                }
+            }
+        }
+
+        synchronized int backlog() {
+            return pending.size();
+        }
+
+        synchronized void close() {
+            closed = true;
+            while (!pending.isEmpty()) {
+                drop(pending.poll());
+            }
+        }
+
+        // On the listener's looper, wait for the next frame
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            ArrayDeque<Message> batch;
+            synchronized (this) {
+                batch = pending;
+                pending = draining;
+                draining = batch;
+                scheduled = false;
+            }
+            frames.incrementAndGet();
+
+            Message msg;
+            while ((msg = batch.poll()) != null) {
+                if (closed) {
+                    drop(msg);
+                    continue;
+                }
+                handler.dispatchMessage(msg);
+                delivered.incrementAndGet();
+                msg.recycle();
+            }
+        }
+    }
+}
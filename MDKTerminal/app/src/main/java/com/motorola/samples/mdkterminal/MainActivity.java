@@ -43,8 +43,9 @@ import android.os.Message;
 import android.support.design.widget.Snackbar;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.Toolbar;
-import android.text.method.ScrollingMovementMethod;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -59,6 +60,10 @@ import android.widget.TextView;
 import com.motorola.mod.ModDevice;
 import com.motorola.mod.ModManager;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 
 
@@ -68,8 +73,19 @@ public class MainActivity extends AppCompatActivity {
     private EditText editCommand;
     private RawPersonality personality;
     private boolean rawString = true;
+    private boolean binaryCrc = true;
     private Menu menu;
 
+    // Reused for every message, one per wire format
+    private JSONCreator jsonCreator = new JSONCreator();
+    private TLVCreator tlvCreator = new TLVCreator(binaryCrc);
+
+    private RecyclerView terminalView;
+    private TerminalAdapter terminal = new TerminalAdapter(new Scrollback());
+    private HexFormatter hexFormatter = new HexFormatter();
+    private MetricsOverlay metricsOverlay;
+    private StreamRecorder recorder;
+
     private LinearLayout configLayout;
     private ConnectorDefinition[] connectorArray;
 
@@ -92,10 +108,15 @@ public class MainActivity extends AppCompatActivity {
             setImageButtonEnabled(this, false, btSend, R.drawable.ic_send_24dp);
         }
 
-        TextView tv = (TextView) findViewById(R.id.text_content);
-        if (tv != null) {
-            tv.setMovementMethod(new ScrollingMovementMethod());
+        terminalView = (RecyclerView) findViewById(R.id.text_content);
+        if (terminalView != null) {
+            LinearLayoutManager layout = new LinearLayoutManager(this);
+            layout.setStackFromEnd(true);
+            terminalView.setLayoutManager(layout);
+            terminalView.setAdapter(terminal);
         }
+        appendLine(getString(R.string.terminal_prompt).trim());
+        metricsOverlay = new MetricsOverlay(this);
     }
 
     @Override
@@ -103,11 +124,15 @@ public class MainActivity extends AppCompatActivity {
         super.onDestroy();
 
         releasePersonality();
+        if (recorder != null) {
+            stopRecording();
+        }
     }
 
     @Override
     public void onPause() {
         super.onPause();
+        metricsOverlay.pause();
     }
 
     @Override
@@ -115,6 +140,7 @@ public class MainActivity extends AppCompatActivity {
         super.onResume();
 
         initPersonality();
+        metricsOverlay.resume();
     }
 
     @Override
@@ -125,7 +151,10 @@ public class MainActivity extends AppCompatActivity {
     private void initPersonality() {
         if (null == personality) {
             personality = new RawPersonality(this);
+            personality.setMessageFraming(rawString);
+            personality.setBinaryCrc(binaryCrc);
             personality.registerListener(handler);
+            personality.setRecorder(recorder);
         }
     }
 
@@ -152,6 +181,15 @@ public class MainActivity extends AppCompatActivity {
                     int length = msg.arg1;
                     onRawData(buff, length);
                     break;
+                case Personality.MSG_RAW_MESSAGE:
+                case Personality.MSG_RAW_COMMAND:
+                    onTerminalMessage((TerminalMessage) msg.obj);
+                    break;
+                case Personality.MSG_RAW_PROTOCOL:
+                    Snackbar.make(findViewById(R.id.content_view), msg.arg1 != 0
+                                    ? "Binary protocol enabled." : "JSON protocol enabled.",
+                            Snackbar.LENGTH_SHORT).show();
+                    break;
                 case Personality.MSG_RAW_IO_READY:
                     onRawInterfaceReady();
                     break;
@@ -205,23 +243,128 @@ public class MainActivity extends AppCompatActivity {
             showGPIOConfigDialog();
         }
 
+        if (id == R.id.action_metrics) {
+            boolean show = !metricsOverlay.isVisible();
+            metricsOverlay.setVisible(show);
+            item.setChecked(show);
+            return true;
+        }
+
+        if (id == R.id.action_record) {
+            if (recorder == null) {
+                startRecording();
+            } else {
+                stopRecording();
+            }
+            item.setChecked(recorder != null);
+            return true;
+        }
+
+        if (id == R.id.action_replay) {
+            startReplay();
+            return true;
+        }
+
+        if (id == R.id.action_loopback) {
+            startLoopback();
+            return true;
+        }
+
         if (id == R.id.action_raw_binary) {
             menu.findItem(R.id.action_raw_string).setChecked(false);
+            menu.findItem(R.id.action_raw_tlv).setChecked(false);
             item.setChecked(true);
             rawString = false;
+            if (personality != null) {
+                personality.setMessageFraming(false);
+            }
             return true;
         }
 
-        if (id == R.id.action_raw_string) {
+        if (id == R.id.action_tlv_crc) {
+            binaryCrc = !binaryCrc;
+            item.setChecked(binaryCrc);
+            if (personality != null) {
+                personality.setBinaryCrc(binaryCrc);
+            }
+            return true;
+        }
+
+        if (id == R.id.action_raw_string || id == R.id.action_raw_tlv) {
+            boolean binary = id == R.id.action_raw_tlv;
             menu.findItem(R.id.action_raw_binary).setChecked(false);
+            menu.findItem(binary ? R.id.action_raw_string : R.id.action_raw_tlv).setChecked(false);
             item.setChecked(true);
             rawString = true;
+            if (personality != null) {
+                personality.setMessageFraming(true);
+                personality.requestBinaryProtocol(binary);
+            }
             return true;
         }
 
         return super.onOptionsItemSelected(item);
     }
 
+    // Capture the raw stream to app storage, fetch it with adb pull to share
+    private void startRecording() {
+        try {
+            recorder = new StreamRecorder(StreamRecorder.createFile(getExternalFilesDir(null), "terminal"));
+        } catch (IOException e) {
+            Log.e(Constants.TAG, "Cannot start recording: " + e);
+            return;
+        }
+        if (personality != null) {
+            personality.setRecorder(recorder);
+        }
+        Log.d(Constants.TAG, "Recording to " + recorder.getPath());
+    }
+
+    private void stopRecording() {
+        if (personality != null) {
+            personality.setRecorder(null);
+        }
+        recorder.close();
+        Log.d(Constants.TAG, "Recorded " + recorder.getChunkCount() + " reads to " + recorder.getPath());
+        recorder = null;
+    }
+
+    // Play the newest recording through the terminal in place of the Mod
+    private void startReplay() {
+        File path = StreamRecording.findLatest(getExternalFilesDir(null));
+        if (path == null || personality == null) {
+            Snackbar.make(findViewById(R.id.content_view), "No recording to replay.",
+                    Snackbar.LENGTH_SHORT).show();
+            return;
+        }
+        try {
+            personality.replaceTransport(new ReplayTransport(path, 1, false));
+        } catch (IOException e) {
+            Log.e(Constants.TAG, "Cannot replay " + path + ": " + e);
+        }
+    }
+
+    // Echo every sent command back from an in-process fake Mod, no Mod needed
+    private void startLoopback() {
+        if (personality == null) {
+            return;
+        }
+        try {
+            personality.replaceTransport(new LoopbackTransport(new FakeMod.EchoScript()));
+        } catch (IOException e) {
+            Log.e(Constants.TAG, "Cannot start loopback: " + e);
+        }
+    }
+
+    // Raw channel metrics are included in: adb shell dumpsys activity <package>
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        writer.print(prefix);
+        writer.println("Metrics:");
+        Metrics.get().dump(prefix + "  ", writer);
+    }
+
     public static void setImageButtonEnabled(Context context, boolean enabled,
                                              ImageButton item, int iconResId) {
 
@@ -295,88 +438,66 @@ public class MainActivity extends AppCompatActivity {
      */
     private void sendCommand(String cmd) {
         if (cmd != null && cmd.isEmpty() != true) {
-            JSONCreator json = new JSONCreator();
-            json.createCmd(cmd, JSONCreator.TERM);
-            personality.executeRaw(json.toString());
+            MessageCreator message = newMessage();
+            message.createCmd(cmd, JSONCreator.TERM);
+            personality.executeRaw(message.toByteArray());
 
             // Update UI
-            StringBuilder sb = new StringBuilder();
-            byte[] rawCmd = json.toString().getBytes();
-            sb.append("Sending: " + json.toString() + " - [");
-            for (int i = 0; i < rawCmd.length; i++) {
-                sb.append(String.format(" 0x%02x", rawCmd[i]));
-            }
-            sb.append("]");
-
-            TextView tv = (TextView) findViewById(R.id.text_content);
-            if (tv != null) {
-                //tv.append("\n");
-                tv.append("cmd: " + cmd);
-            }
+            appendLine("cmd: " + cmd.trim());
         }
     }
 
-    private void onRawData(byte[] buffer, int length) {
-        if (buffer == null || buffer.length <= 0) {
+    /**
+     * Parsed message from RawPersonality, in String mode
+     */
+    private void onTerminalMessage(TerminalMessage message) {
+        if (message == null) {
             return;
         }
-        /** Command data (may more tag in furture) shall not show on terminal UI */
-         boolean showInTerminal = false;
-
-        StringBuilder sb = new StringBuilder();
-        sb.append("raw: ");
-        if (rawString) {
-            /** Get RAW data in String format */
-            String json = new String(buffer, 0, length);
-            Log.d(Constants.TAG, "Get RAW: " + json);
-            JSONParsor parsor = new JSONParsor(json.toString());
-            if (parsor.hasTag(JSONCreator.COMMAND)) {
-                showInTerminal = false;
-
-                // The command response data
-                String cmd = parsor.getData(JSONCreator.COMMAND);
-                if (cmd != null) {
-                    if (cmd.equalsIgnoreCase(JSONCreator.STATUS)) {
-                        // Got the GPIO status
-                        ArrayList<ConnectorPort> ports =
-                                parsor.getConnectorPortArray(JSONCreator.GPIOS);
-                        if (configLayout != null && ports != null) {
-                            // Hide read status progress bar
-                            configLayout.findViewById(R.id.progress_reading).setVisibility(View.GONE);
-                            // Init Ports UI widgets
-                            connectorArray = new ConnectorDefinition[ports.size()];
-                            LayoutInflater inflater = getLayoutInflater();
-                            for (int i = 0; i < ports.size(); i++) {
-                                connectorArray[i] = new ConnectorDefinition(this, ports.get(i));
-                                LinearLayout linear = connectorArray[i].createLayout(inflater);
-                                configLayout.addView(linear);
-                            }
-                        }
 
-                    }
+        if (JSONCreator.COMMAND.equals(message.tag)) {
+            /** Command data (may more tag in furture) shall not show on terminal UI */
+            ArrayList<ConnectorPort> ports = message.ports;
+            if (configLayout != null && ports != null) {
+                // Got the GPIO status
+                // Hide read status progress bar
+                configLayout.findViewById(R.id.progress_reading).setVisibility(View.GONE);
+                // Init Ports UI widgets
+                connectorArray = new ConnectorDefinition[ports.size()];
+                LayoutInflater inflater = getLayoutInflater();
+                for (int i = 0; i < ports.size(); i++) {
+                    connectorArray[i] = new ConnectorDefinition(this, ports.get(i));
+                    LinearLayout linear = connectorArray[i].createLayout(inflater);
+                    configLayout.addView(linear);
                 }
-            } else if (parsor.hasTag(JSONCreator.TERM)) {
-                showInTerminal = true;
-
-                // The terminal response data
-                String data = parsor.getData(JSONCreator.TERM);
-                sb.append(data);
             }
-        } else {
-            showInTerminal = true;
+        } else if (JSONCreator.TERM.equals(message.tag)) {
+            // The terminal response data
+            appendLine("raw: " + message.data);
+        }
+    }
 
-            /** Get RAW data in Binary format */
-            for (int i = 0; i < length; i++) {
-                sb.append(String.format(" 0x%02x", buffer[i]));
-            }
+    /**
+     * Unparsed RAW data, in Binary mode
+     */
+    private void onRawData(byte[] buffer, int length) {
+        if (buffer == null || buffer.length <= 0) {
+            return;
         }
 
-        if (showInTerminal) {
-            TextView tv = (TextView) findViewById(R.id.text_content);
-            if (tv != null) {
-                tv.append("\n");
-                tv.append(sb.toString());
-            }
+        /** Get RAW data in Binary format */
+        appendLine(hexFormatter.format("raw:", buffer, 0, length));
+    }
+
+    /**
+     * Add one line to the terminal, following the output only if the user
+     * has not scrolled back through the history
+     */
+    private void appendLine(String line) {
+        boolean atBottom = terminalView == null || !terminalView.canScrollVertically(1);
+        terminal.append(line);
+        if (terminalView != null && atBottom) {
+            terminalView.scrollToPosition(terminal.getItemCount() - 1);
         }
     }
 
@@ -409,7 +530,7 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onClick(DialogInterface dialog, int which) {
                 if (connectorArray != null) {
-                    JSONCreator json = new JSONCreator();
+                    MessageCreator json = newMessage();
                     json.createCmd(JSONCreator.WRITE, JSONCreator.COMMAND);
                     for (int i = 0; i < connectorArray.length; i++) {
                         connectorArray[i].createConfig(json);
@@ -417,7 +538,7 @@ public class MainActivity extends AppCompatActivity {
                     json.generateConfig();
 
                     if (personality != null) {
-                        personality.executeRaw(json.toString());
+                        personality.executeRaw(json.toByteArray());
                         Snackbar.make(findViewById(R.id.content_view),
                                 "GPIO Configuration submitted.", Snackbar.LENGTH_SHORT).show();
                     }
@@ -434,12 +555,23 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void queryConnectorDefinition() {
-        personality.executeRaw(ConnectorDefinition.queryDefinition().toString());
+        personality.executeRaw(ConnectorDefinition.queryDefinition(newMessage()).toByteArray());
+    }
+
+    // A reset creator for the wire format currently in use
+    private MessageCreator newMessage() {
+        MessageCreator message = jsonCreator;
+        if (personality != null && personality.isBinaryProtocol()) {
+            // Same CRC setting as the personality's own protocol commands
+            tlvCreator.setCrc(personality.isBinaryCrc());
+            message = tlvCreator;
+        }
+        message.reset();
+        return message;
     }
 
     private void fakeDefinition() {
         String jsonString = getString(R.string.json);
-        byte[] buffer = jsonString.getBytes();
-        onRawData(buffer, buffer.length);
+        onTerminalMessage(TerminalMessage.parse(jsonString));
     }
 }
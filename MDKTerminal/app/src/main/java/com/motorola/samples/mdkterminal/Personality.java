@@ -44,7 +44,6 @@ import com.motorola.mod.IModManager;
 import com.motorola.mod.ModDevice;
 import com.motorola.mod.ModManager;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class Personality {
@@ -54,10 +53,14 @@ public class Personality {
 
     protected Context context;
 
-    List<Handler> listeners = new ArrayList<>();
+    ListenerDispatcher listeners = new ListenerDispatcher();
 
     public Personality(Context context) {
         this.context = context;
+        // Terminal output may be dropped for a listener that falls behind,
+        // command replies come as MSG_RAW_COMMAND and are always delivered
+        listeners.setDroppable(MSG_RAW_DATA);
+        listeners.setDroppable(MSG_RAW_MESSAGE);
 
         Intent service = new Intent(ModManager.ACTION_BIND_MANAGER);
         service.setComponent(ModManager.MOD_SERVICE_NAME);
@@ -87,9 +90,17 @@ public class Personality {
     public final static int MSG_RAW_REQUEST_PERMISSION = 7;
     public final static int MSG_RAW_IO_READY = 8;
     public final static int MSG_RAW_DATA = 9;
+    public final static int MSG_RAW_MESSAGE = 10;
+    public final static int MSG_RAW_PROTOCOL = 11;
+    public final static int MSG_RAW_COMMAND = 12;
 
     public void registerListener(Handler listener) {
-        listeners.add(listener);
+        listeners.register(listener);
+    }
+
+    // Delivery and backpressure counters for the registered listeners
+    public ListenerDispatcher getListenerDispatcher() {
+        return listeners;
     }
 
     public ModDevice getModDevice() {
@@ -110,25 +121,16 @@ public class Personality {
     }
 
     protected void notifyListeners(int what) {
-        for (Handler handler : listeners) {
-            handler.sendEmptyMessage(what);
-        }
+        listeners.send(what);
     }
 
+    // Each listener gets its own copy, delivered on its next frame
     protected void notifyListeners(Message msg) {
-        for (Handler handler : listeners) {
-            handler.sendMessage(msg);
-        }
+        listeners.send(msg);
     }
 
     protected void notifyListeners(int what, int arg) {
-        Message msg = Message.obtain();
-        msg.what = what;
-        msg.arg1 = arg;
-
-        for (Handler handler : listeners) {
-            handler.sendMessage(msg);
-        }
+        listeners.send(what, arg);
     }
 
     private ServiceConnection mConnection = new ServiceConnection() {
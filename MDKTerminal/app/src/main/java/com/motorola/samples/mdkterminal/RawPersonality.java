@@ -51,22 +51,61 @@ import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class RawPersonality extends Personality implements Personality.RawInterface {
+    // Per-message logging, keep off outside of debugging
+    private static final boolean DEBUG = false;
+
     private static final int SEND_MSG = 1;
     private static final int POLL_TYPE_READ_DATA = 1;
     private static final int POLL_TYPE_EXIT = 2;
     private static final int EXIT_BYTE = 0xFF;
 
     private ModInterfaceDelegation pendingDevice;
-    private ParcelFileDescriptor parcelFD;
+    private RawTransport transport;
     private FileDescriptor[] syncPipes;
 
     private Thread receiveThread = null;
     private HandlerThread sendingThread = null;
     private FileOutputStream outputStream;
     private Handler handler;
+    private final AtomicInteger pendingSends = new AtomicInteger();
+
+    // Raw channel metrics, see Metrics.report()
+    private final Metrics.Counter bytesIn = Metrics.get().counter("raw.bytes_in");
+    private final Metrics.Counter reads = Metrics.get().counter("raw.reads");
+    private final Metrics.Counter pollWakeups = Metrics.get().counter("raw.poll_wakeups");
+    private final Metrics.Counter messages = Metrics.get().counter("raw.messages");
+    private final Metrics.Counter bytesOut = Metrics.get().counter("raw.bytes_out");
+    private final Metrics.Counter writes = Metrics.get().counter("raw.writes");
+    private final Metrics.Gauge sendQueueDepth = Metrics.get().gauge("raw.send_queue");
+    private final Metrics.Histogram writeLatency = Metrics.get().histogram("raw.write");
+
+    // Split the stream into messages on the receive thread, JSON or binary
+    private volatile boolean messageFraming = true;
+    private final JSONFramer jsonFramer = new JSONFramer(new JSONFramer.Listener() {
+        @Override
+        public void onObject(byte[] data, int length) {
+            onRawObject(data, length);
+        }
+    });
+    private final TLVFramer tlvFramer = new TLVFramer(new TLVFramer.Listener() {
+        @Override
+        public void onFrame(int type, byte[] payload, int length) {
+            onMessage(TerminalMessage.fromFrame(type, payload, length));
+        }
+    });
+    private MessageFramer currentFramer;            // Receive thread only
+
+    // Outgoing wire format, binary only once the Mod has accepted it
+    private volatile boolean binaryProtocol = false;
+    private volatile boolean binaryRequested = false;
+    private volatile boolean binaryCrc = true;
+
+    private volatile StreamRecorder recorder;
 
     private int targetPID = Constants.INVALID_ID;
     private int targetVID = Constants.INVALID_ID;
@@ -116,9 +155,9 @@ public class RawPersonality extends Personality implements Personality.RawInterf
         sendingThread = null;
         receiveThread = null;
 
-        if (parcelFD != null) try {
-            parcelFD.close();
-            parcelFD = null;
+        if (transport != null) try {
+            transport.close();
+            transport = null;
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -148,9 +187,15 @@ public class RawPersonality extends Personality implements Personality.RawInterf
 
     //@Override
     public void executeRaw(String cmd) {
+        executeRaw(cmd.getBytes());
+    }
+
+    // Send already encoded bytes, e.g. JSONCreator.toByteArray()
+    public void executeRaw(byte[] cmd) {
         if (null != handler) {
             Message msg = Message.obtain(handler, SEND_MSG);
             msg.obj = cmd;
+            sendQueueDepth.set(pendingSends.incrementAndGet());
             handler.sendMessage(msg);
         }
     }
@@ -164,10 +209,15 @@ public class RawPersonality extends Personality implements Personality.RawInterf
         public void handleMessage(Message msg) {
             switch (msg.what) {
                 case SEND_MSG:
+                    sendQueueDepth.set(pendingSends.decrementAndGet());
                     try {
                         if (null != outputStream) {
-                            String cmd = (String) msg.obj;
-                            outputStream.write(cmd.getBytes());
+                            byte[] cmd = (byte[]) msg.obj;
+                            long start = System.nanoTime();
+                            outputStream.write(cmd);
+                            writeLatency.recordSince(start);
+                            writes.increment();
+                            bytesOut.add(cmd.length);
                         }
                     } catch (IOException e) {
                         Log.e(Constants.TAG, "IOException while writing to raw file" + e);
@@ -201,6 +251,126 @@ public class RawPersonality extends Personality implements Personality.RawInterf
         notifyListeners(msg);
     }
 
+    /**
+     * With framing on, listeners get one MSG_RAW_MESSAGE with a parsed
+     * TerminalMessage per complete JSON object or binary frame, however reads
+     * split it, or MSG_RAW_COMMAND for command replies such as the GPIO
+     * status. With framing off they get every read as MSG_RAW_DATA.
+     */
+    public void setMessageFraming(boolean enabled) {
+        messageFraming = enabled;
+    }
+
+    public boolean isMessageFraming() {
+        return messageFraming;
+    }
+
+    /** Copy every read from the raw channel into recorder, or stop with null */
+    public void setRecorder(StreamRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Ask the Mod to switch to the binary protocol, or back to JSON. Switching
+     * to binary only takes effect once the Mod echoes the command, older Mods
+     * simply stay on JSON. Listeners get MSG_RAW_PROTOCOL with arg1 set to 1
+     * for binary and 0 for JSON.
+     */
+    public void requestBinaryProtocol(boolean enable) {
+        if (enable) {
+            if (binaryProtocol) {
+                return;
+            }
+            binaryRequested = true;
+            JSONCreator json = new JSONCreator();
+            json.createCmd(JSONCreator.BINARY, JSONCreator.COMMAND);
+            executeRaw(json.toByteArray());
+        } else {
+            binaryRequested = false;
+            if (!binaryProtocol) {
+                return;
+            }
+            TLVCreator tlv = new TLVCreator(binaryCrc);
+            tlv.createCmd(JSONCreator.JSON, JSONCreator.COMMAND);
+            executeRaw(tlv.toByteArray());
+            binaryProtocol = false;
+            notifyListeners(MSG_RAW_PROTOCOL, 0);
+        }
+    }
+
+    public boolean isBinaryProtocol() {
+        return binaryProtocol;
+    }
+
+    // Append a CRC to outgoing binary frames, on by default
+    public void setBinaryCrc(boolean enabled) {
+        binaryCrc = enabled;
+    }
+
+    public boolean isBinaryCrc() {
+        return binaryCrc;
+    }
+
+    // Hand bytes to whichever framer matches the start of the next message.
+    // Binary frames are only looked for once the binary protocol is requested,
+    // so a stray sync byte in JSON mode cannot swallow the messages after it.
+    private void feedFramers(byte[] data, int offset, int length) {
+        int end = offset + length;
+        while (offset < end) {
+            if (currentFramer == null) {
+                int b = data[offset] & 0xFF;
+                if (b == '{') {
+                    currentFramer = jsonFramer;
+                } else if (b == TLVFramer.MAGIC && (binaryRequested || binaryProtocol)) {
+                    currentFramer = tlvFramer;
+                } else {
+                    offset++;
+                    continue;
+                }
+            }
+            offset += currentFramer.feed(data, offset, end - offset);
+            if (currentFramer.isIdle()) {
+                currentFramer = null;
+            }
+        }
+    }
+
+    private void resetFramers() {
+        jsonFramer.reset();
+        tlvFramer.reset();
+        currentFramer = null;
+    }
+
+    private void onRawObject(byte[] data, int length) {
+        if (DEBUG) {
+            Log.d(Constants.TAG, "Get RAW: " + new String(data, 0, length, StandardCharsets.UTF_8));
+        }
+
+        onMessage(TerminalMessage.parse(data, 0, length));
+    }
+
+    private void onMessage(TerminalMessage message) {
+        if (message == null) {
+            return;
+        }
+
+        if (binaryRequested && JSONCreator.COMMAND.equals(message.tag)
+                && JSONCreator.BINARY.equalsIgnoreCase(message.data)) {
+            // The Mod accepted the binary protocol
+            binaryRequested = false;
+            binaryProtocol = true;
+            notifyListeners(MSG_RAW_PROTOCOL, 1);
+            return;
+        }
+
+        messages.increment();
+        Message msg = Message.obtain();
+        msg.what = JSONCreator.COMMAND.equals(message.tag) ? MSG_RAW_COMMAND : MSG_RAW_MESSAGE;
+        msg.obj = message;
+
+        notifyListeners(msg);
+    }
+
     private boolean openRawDeviceifAvailable() {
         if (null == modManager) {
             Log.d(Constants.TAG, "openRawDeviceifAvailable - no mod manager");
@@ -262,25 +432,10 @@ public class RawPersonality extends Personality implements Personality.RawInterf
     private void getRawPfd(ModInterfaceDelegation device) {
         try {
             // Get RAW file description via ModManager, to read / write data.
-            parcelFD = modManager.openModInterface(device,
+            ParcelFileDescriptor pfd = modManager.openModInterface(device,
                     ParcelFileDescriptor.MODE_READ_WRITE);
-            if (parcelFD != null) {
-                try {
-                    syncPipes = Os.pipe();
-                } catch (ErrnoException e) {
-                    e.printStackTrace();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-                Log.d(Constants.TAG, "getRawPf PFD: " + parcelFD);
-
-                createSendingThread();
-                createReceivingThread();
-
-                if (null != sendingThread && null != receiveThread) {
-                    Log.d(Constants.TAG, "RAW I/O created.");
-                    onRawInterfaceReady();
-                }
+            if (pfd != null) {
+                openTransport(new PfdTransport(pfd));
             } else {
                 Log.e(Constants.TAG, "getRawPfd PFD null ");
             }
@@ -289,9 +444,54 @@ public class RawPersonality extends Personality implements Personality.RawInterf
         }
     }
 
+    // Copy a read into the recorder, if one is set
+    private void record(byte[] buffer, int length) {
+        StreamRecorder rec = recorder;
+        if (rec != null) {
+            rec.record(buffer, 0, length);
+        }
+    }
+
+    /** Close raw I/O over the current transport, if any, and continue over t */
+    public void replaceTransport(RawTransport t) {
+        closeRawDeviceifAvailable();
+        openTransport(t);
+    }
+
+    /**
+     * Start raw I/O over any transport, e.g. a LoopbackTransport when no Mod is
+     * attached. onDestroy() or a Mod detach closes it again.
+     */
+    public void openTransport(RawTransport t) {
+        if (transport != null) {
+            Log.e(Constants.TAG, "openTransport - already open: " + transport);
+            return;
+        }
+        transport = t;
+        // Every new connection starts out on JSON
+        binaryProtocol = false;
+        binaryRequested = false;
+        try {
+            syncPipes = Os.pipe();
+        } catch (ErrnoException e) {
+            e.printStackTrace();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        Log.d(Constants.TAG, "getRawPf transport: " + transport);
+
+        createSendingThread();
+        createReceivingThread();
+
+        if (null != sendingThread && null != receiveThread) {
+            Log.d(Constants.TAG, "RAW I/O created.");
+            onRawInterfaceReady();
+        }
+    }
+
     private void createSendingThread() {
         if (sendingThread == null) {
-            FileDescriptor fd = parcelFD.getFileDescriptor();
+            FileDescriptor fd = transport.getFileDescriptor();
             outputStream = new FileOutputStream(fd);
             sendingThread = new HandlerThread("sendingThread");
             sendingThread.start();
@@ -306,23 +506,45 @@ public class RawPersonality extends Personality implements Personality.RawInterf
         receiveThread = new Thread() {
             @Override
             public void run() {
-                FileDescriptor fd = parcelFD.getFileDescriptor();
+                FileDescriptor fd = transport.getFileDescriptor();
                 FileInputStream inputStream = new FileInputStream(fd);
+                byte[] frameBuffer = new byte[MAX_BYTES];
+                boolean framing = false;
                 int ret = 0;
                 synchronized (syncPipes) {
                     while (ret >= 0) {
                         try {
                             // Poll on the exit pipe and the raw channel
                             int polltype = blockRead();
-                            Log.d(Constants.TAG, "Out of Block pollType:" + polltype);
+                            if (DEBUG) Log.d(Constants.TAG, "Out of Block pollType:" + polltype);
                             if (polltype == POLL_TYPE_READ_DATA) {
-                                Log.d(Constants.TAG, "Going to read from RAW");
-                                byte[] buffer = new byte[MAX_BYTES];
-                                ret = inputStream.read(buffer, 0, MAX_BYTES);
-                                if (ret > 0) {
-                                    // Got raw data
-                                    Log.d(Constants.TAG, "Got raw data.");
-                                    onRawData(buffer, ret);
+                                if (DEBUG) Log.d(Constants.TAG, "Going to read from RAW");
+                                if (messageFraming) {
+                                    if (!framing) {
+                                        // Start clean after raw mode or a reconnect
+                                        resetFramers();
+                                        framing = true;
+                                    }
+                                    // The framers copy what they keep, reuse the buffer
+                                    ret = inputStream.read(frameBuffer, 0, MAX_BYTES);
+                                    if (ret > 0) {
+                                        reads.increment();
+                                        bytesIn.add(ret);
+                                        record(frameBuffer, ret);
+                                        feedFramers(frameBuffer, 0, ret);
+                                    }
+                                } else {
+                                    framing = false;
+                                    byte[] buffer = new byte[MAX_BYTES];
+                                    ret = inputStream.read(buffer, 0, MAX_BYTES);
+                                    if (ret > 0) {
+                                        reads.increment();
+                                        bytesIn.add(ret);
+                                        record(buffer, ret);
+                                        // Got raw data
+                                        if (DEBUG) Log.d(Constants.TAG, "Got raw data.");
+                                        onRawData(buffer, ret);
+                                    }
                                 }
                             } else if (polltype == POLL_TYPE_EXIT) {
                                 Log.d(Constants.TAG, "Exiting Read Thread.");
@@ -350,7 +572,7 @@ public class RawPersonality extends Personality implements Personality.RawInterf
         // readRawFd will watch whether data is available on the raw channel.
         StructPollfd readRawFd = new StructPollfd();
         pollfds[0] = readRawFd;
-        readRawFd.fd = parcelFD.getFileDescriptor();
+        readRawFd.fd = transport.getFileDescriptor();
         readRawFd.events = (short) (OsConstants.POLLIN | OsConstants.POLLHUP);
 
         // syncFd will watch whether any exit signal.
@@ -361,6 +583,7 @@ public class RawPersonality extends Personality implements Personality.RawInterf
 
         try {
             int ret = Os.poll(pollfds, -1);
+            pollWakeups.increment();
 
             if (ret > 0) {
                 if (syncFd.revents == OsConstants.POLLIN) {
@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdkterminal;
+
+/**
+ * Fixed-capacity ring of terminal lines. Once full, each new line evicts the
+ * oldest one, so memory stays bounded however long a session runs.
+ */
+public class Scrollback {
+    private String[] lines;
+    private int head = 0;   // Index of the oldest line
+    private int size = 0;
+
+    public Scrollback() {
+        this(Constants.SCROLLBACK_LINES);
+    }
+
+    public Scrollback(int capacity) {
+        lines = new String[Math.max(1, capacity)];
+    }
+
+    public int getCapacity() {
+        return lines.length;
+    }
+
+    // Keeps the newest lines that still fit
+    public void setCapacity(int capacity) {
+        capacity = Math.max(1, capacity);
+        String[] resized = new String[capacity];
+        int keep = Math.min(size, capacity);
+        for (int i = 0; i < keep; i++) {
+            resized[i] = get(size - keep + i);
+        }
+        lines = resized;
+        head = 0;
+        size = keep;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Line at position, 0 being the oldest kept line
+    public String get(int position) {
+        return lines[(head + position) % lines.length];
+    }
+
+    /**
+     * Return true if the oldest line was evicted to make room
+     */
+    public boolean add(String line) {
+        if (size < lines.length) {
+            lines[(head + size) % lines.length] = line;
+            size++;
+            return false;
+        }
+        lines[head] = line;
+        head = (head + 1) % lines.length;
+        return true;
+    }
+
+    public void clear() {
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = null;
+        }
+        head = 0;
+        size = 0;
+    }
+}
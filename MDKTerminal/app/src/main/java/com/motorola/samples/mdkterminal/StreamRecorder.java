@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdkterminal;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Append-only capture of a raw byte stream into a memory-mapped file.
+ *
+ * Every chunk is stored exactly as it was read, behind its time since the start
+ * of the recording in nanoseconds (8 bytes) and its length (4 bytes), so that
+ * StreamRecording can replay it with the original pacing and read boundaries.
+ * The file is mapped a segment at a time, which makes record() a bounds check
+ * and a copy into the page cache. close() trims the file to what was written.
+ * Empty reads are not recorded, so after a crash the zero filled rest of the
+ * last segment reads as the end of the recording.
+ */
+public class StreamRecorder {
+    public static final int MAGIC = 0x4D444B52;     // "MDKR"
+    public static final int VERSION = 1;
+    public static final String EXTENSION = ".rawrec";
+
+    // Magic, version and the wall clock start time in milliseconds
+    static final int FILE_HEADER_BYTES = 16;
+    static final int CHUNK_HEADER_BYTES = 12;
+    private static final int SEGMENT_BYTES = 1 << 20;
+
+    private final File path;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long startNs;
+    private MappedByteBuffer map;
+    private long written = 0;          // Bytes written so far
+    private long chunks = 0;
+
+    public StreamRecorder(File path) throws IOException {
+        this.path = path;
+        file = new RandomAccessFile(path, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+        startNs = System.nanoTime();
+
+        mapSegment(0, SEGMENT_BYTES);
+        map.putInt(MAGIC);
+        map.putInt(VERSION);
+        map.putLong(System.currentTimeMillis());
+        written = FILE_HEADER_BYTES;
+    }
+
+    /** New file in dir named after prefix and the current time */
+    public static File createFile(File dir, String prefix) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US);
+        return new File(dir, prefix + "-" + format.format(new Date()) + EXTENSION);
+    }
+
+    public File getPath() {
+        return path;
+    }
+
+    public synchronized long getChunkCount() {
+        return chunks;
+    }
+
+    public synchronized long getLength() {
+        return written;
+    }
+
+    /** Append one chunk; on a write error the recording stops and the error is logged */
+    public synchronized void record(byte[] data, int offset, int length) {
+        if (map == null || length == 0)
+            return;
+
+        int needed = CHUNK_HEADER_BYTES + length;
+        try {
+            if (map.remaining() < needed) {
+                mapSegment(written, Math.max(SEGMENT_BYTES, needed));
+            }
+        } catch (IOException e) {
+            Log.e(Constants.TAG, "Stopped recording " + path + ": " + e);
+            close();
+            return;
+        }
+        map.putLong(System.nanoTime() - startNs);
+        map.putInt(length);
+        map.put(data, offset, length);
+        written += needed;
+        chunks++;
+    }
+
+    public synchronized void close() {
+        if (map == null)
+            return;
+        map = null;
+        try {
+            channel.truncate(written);
+            file.close();
+        } catch (IOException e) {
+            Log.e(Constants.TAG, "Failed to close " + path + ": " + e);
+        }
+    }
+
+    private void mapSegment(long position, int size) throws IOException {
+        map = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+    }
+
+    @Override
+    public String toString() {
+        return "StreamRecorder " + path;
+    }
+}
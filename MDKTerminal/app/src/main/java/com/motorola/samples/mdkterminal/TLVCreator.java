@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdkterminal;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * MessageCreator for the compact binary protocol, see TLVFramer for the layout.
+ *
+ * A term message carries just its text. A command carries the command word
+ * and four bytes per GPIO, instead of JSON names and decimal values.
+ *
+ * Text longer than TLVFramer.MAX_PAYLOAD is sent as consecutive term frames,
+ * split between UTF-8 characters. A command must fit in one frame.
+ */
+public class TLVCreator implements MessageCreator {
+    private byte[] buffer = new byte[256];
+    private int length;
+    private boolean crc;
+
+    public TLVCreator(boolean crc) {
+        this.crc = crc;
+        reset();
+    }
+
+    // Append a CRC to frames started after the next reset()
+    public void setCrc(boolean crc) {
+        this.crc = crc;
+    }
+
+    @Override
+    public void reset() {
+        length = TLVFramer.HEADER_BYTES;
+        buffer[0] = (byte) TLVFramer.MAGIC;
+        buffer[1] = 0;
+        buffer[2] = (byte) (crc ? TLVFramer.FLAG_CRC : 0);
+    }
+
+    @Override
+    public void createCmd(String cmd, String tag) {
+        byte[] text = cmd.getBytes(StandardCharsets.UTF_8);
+        if (JSONCreator.TERM.equals(tag)) {
+            buffer[1] = TLVFramer.TYPE_TERM;
+            put(text, text.length);
+        } else {
+            if (text.length > 0xFF) {
+                throw new IllegalArgumentException("Command word of " + text.length
+                        + " bytes, at most 255 fit");
+            }
+            buffer[1] = TLVFramer.TYPE_COMMAND;
+            ensure(1);
+            buffer[length++] = (byte) text.length;
+            put(text, text.length);
+        }
+    }
+
+    @Override
+    public void addConfig(String port, int pin, int level, String direction) {
+        ensure(TLVFramer.GPIO_BYTES);
+        buffer[length++] = (byte) port.charAt(0);
+        buffer[length++] = (byte) pin;
+        buffer[length++] = (byte) level;
+        buffer[length++] = (byte) (direction.equalsIgnoreCase("out") ? 1 : 0);
+    }
+
+    @Override
+    public void generateConfig() {
+        // GPIO entries are written in place
+    }
+
+    @Override
+    public byte[] toByteArray() {
+        int payload = length - TLVFramer.HEADER_BYTES;
+        if (payload > TLVFramer.MAX_PAYLOAD && buffer[1] != TLVFramer.TYPE_TERM) {
+            throw new IllegalArgumentException("Command payload of " + payload
+                    + " bytes, at most " + TLVFramer.MAX_PAYLOAD + " fit");
+        }
+
+        int frames = 0;
+        for (int start = TLVFramer.HEADER_BYTES; frames == 0 || start < length; frames++) {
+            start = frameEnd(start);
+        }
+        int overhead = TLVFramer.HEADER_BYTES + (crc ? TLVFramer.CRC_BYTES : 0);
+        byte[] bytes = new byte[payload + frames * overhead];
+
+        int out = 0;
+        int start = TLVFramer.HEADER_BYTES;
+        do {
+            int end = frameEnd(start);
+            int count = end - start;
+            System.arraycopy(buffer, 0, bytes, out, 3);
+            bytes[out + 3] = (byte) (count >> 8);
+            bytes[out + 4] = (byte) count;
+            System.arraycopy(buffer, start, bytes, out + TLVFramer.HEADER_BYTES, count);
+            int frameBytes = TLVFramer.HEADER_BYTES + count;
+            if (crc) {
+                int value = TLVFramer.crc16(bytes, out + 1, frameBytes - 1);
+                bytes[out + frameBytes] = (byte) (value >> 8);
+                bytes[out + frameBytes + 1] = (byte) value;
+            }
+            out += frameBytes + (crc ? TLVFramer.CRC_BYTES : 0);
+            start = end;
+        } while (start < length);
+        return bytes;
+    }
+
+    // End of the payload bytes from start that fit in one frame
+    private int frameEnd(int start) {
+        int end = Math.min(start + TLVFramer.MAX_PAYLOAD, length);
+        // Do not split a UTF-8 sequence between frames
+        while (end < length && end > start && (buffer[end] & 0xC0) == 0x80) {
+            end--;
+        }
+        return end;
+    }
+
+    private void put(byte[] data, int count) {
+        ensure(count);
+        System.arraycopy(data, 0, buffer, length, count);
+        length += count;
+    }
+
+    private void ensure(int count) {
+        if (length + count > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + count));
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdkterminal;
+
+/**
+ * Splits the compact binary protocol into frames.
+ *
+ * Each frame is a sync byte, a message type, a flags byte and a big endian
+ * payload length, followed by the payload and, if FLAG_CRC is set, a CRC-16
+ * over everything after the sync byte. Frames failing the CRC are dropped.
+ */
+public class TLVFramer implements MessageFramer {
+    public static final int MAGIC = 0xA5;
+    public static final int HEADER_BYTES = 5;
+    public static final int CRC_BYTES = 2;
+    public static final int MAX_PAYLOAD = 4096;
+
+    public static final int TYPE_TERM = 1;      // UTF-8 terminal text
+    public static final int TYPE_COMMAND = 2;   // Command word, then GPIO entries
+
+    public static final int FLAG_CRC = 0x01;
+
+    // Per GPIO entry: port letter, pin, level, direction (0 in, 1 out)
+    public static final int GPIO_BYTES = 4;
+
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        // CRC-16-CCITT, x^16 + x^12 + x^5 + 1
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            CRC_TABLE[i] = crc & 0xFFFF;
+        }
+    }
+
+    public interface Listener {
+        // payload is reused after return
+        public void onFrame(int type, byte[] payload, int length);
+    }
+
+    private final Listener listener;
+    private final byte[] frame = new byte[HEADER_BYTES + MAX_PAYLOAD + CRC_BYTES];
+    private int length = 0;     // Bytes of the current frame gathered so far
+    private int frameBytes = 0; // Total size once the header is known
+    private int crcErrors = 0;
+    private int badHeaders = 0;
+
+    public TLVFramer(Listener listener) {
+        this.listener = listener;
+    }
+
+    public int getCrcErrorCount() {
+        return crcErrors;
+    }
+
+    public int getBadHeaderCount() {
+        return badHeaders;
+    }
+
+    @Override
+    public boolean isIdle() {
+        return length == 0;
+    }
+
+    @Override
+    public void reset() {
+        length = 0;
+        frameBytes = 0;
+    }
+
+    @Override
+    public int feed(byte[] data, int offset, int count) {
+        int consumed = 0;
+        while (consumed < count) {
+            if (length == 0 && (data[offset + consumed] & 0xFF) != MAGIC) {
+                // Not at a frame, skip up to the next sync byte
+                consumed++;
+                continue;
+            }
+
+            int need = (frameBytes > 0 ? frameBytes : HEADER_BYTES) - length;
+            int n = Math.min(need, count - consumed);
+            System.arraycopy(data, offset + consumed, frame, length, n);
+            length += n;
+            consumed += n;
+
+            if (frameBytes == 0 && length == HEADER_BYTES) {
+                int payload = ((frame[3] & 0xFF) << 8) | (frame[4] & 0xFF);
+                if (payload > MAX_PAYLOAD) {
+                    badHeaders++;
+                    reset();
+                    continue;
+                }
+                frameBytes = HEADER_BYTES + payload
+                        + ((frame[2] & FLAG_CRC) != 0 ? CRC_BYTES : 0);
+            }
+
+            if (frameBytes > 0 && length == frameBytes) {
+                onFrameComplete();
+                reset();
+                return consumed;
+            }
+        }
+        return consumed;
+    }
+
+    private void onFrameComplete() {
+        int payload = ((frame[3] & 0xFF) << 8) | (frame[4] & 0xFF);
+        if ((frame[2] & FLAG_CRC) != 0) {
+            int end = HEADER_BYTES + payload;
+            int crc = ((frame[end] & 0xFF) << 8) | (frame[end + 1] & 0xFF);
+            if (crc != crc16(frame, 1, end - 1)) {
+                crcErrors++;
+                return;
+            }
+        }
+        int type = frame[1] & 0xFF;
+        // Shift the payload to the start so listeners index from 0
+        System.arraycopy(frame, HEADER_BYTES, frame, 0, payload);
+        listener.onFrame(type, frame, payload);
+    }
+
+    public static int crc16(byte[] data, int offset, int length) {
+        int crc = 0;
+        for (int i = offset; i < offset + length; i++) {
+            crc = ((crc << 8) ^ CRC_TABLE[((crc >> 8) ^ data[i]) & 0xFF]) & 0xFFFF;
+        }
+        return crc;
+    }
+}
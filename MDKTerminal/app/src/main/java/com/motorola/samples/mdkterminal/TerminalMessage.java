@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdkterminal;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * One parsed message from the Mod, built off the UI thread.
+ */
+public class TerminalMessage {
+    public final String tag;    // JSONCreator.COMMAND or JSONCreator.TERM
+    public final String data;
+    public final ArrayList<ConnectorPort> ports;   // Only for a GPIO status reply
+
+    public TerminalMessage(String tag, String data, ArrayList<ConnectorPort> ports) {
+        this.tag = tag;
+        this.data = data;
+        this.ports = ports;
+    }
+
+    /**
+     * Return null if the JSON is not a command or terminal message
+     */
+    public static TerminalMessage parse(String json) {
+        return parse(new JSONParsor(json));
+    }
+
+    public static TerminalMessage parse(byte[] json, int offset, int length) {
+        return parse(new JSONParsor(json, offset, length));
+    }
+
+    /**
+     * Decode a TLVFramer payload, null for unknown types
+     */
+    public static TerminalMessage fromFrame(int type, byte[] payload, int length) {
+        if (type == TLVFramer.TYPE_TERM) {
+            return new TerminalMessage(JSONCreator.TERM,
+                    new String(payload, 0, length, StandardCharsets.UTF_8), null);
+        } else if (type == TLVFramer.TYPE_COMMAND && length > 0) {
+            int cmdLength = Math.min(payload[0] & 0xFF, length - 1);
+            String cmd = new String(payload, 1, cmdLength, StandardCharsets.US_ASCII);
+            ArrayList<ConnectorPort> ports = null;
+            if (cmd.equalsIgnoreCase(JSONCreator.STATUS)) {
+                ports = new ArrayList<>();
+                for (int i = 1 + cmdLength; i + TLVFramer.GPIO_BYTES <= length;
+                     i += TLVFramer.GPIO_BYTES) {
+                    ports.add(new ConnectorPort(String.valueOf((char) payload[i]),
+                            payload[i + 1] & 0xFF, payload[i + 2],
+                            payload[i + 3] != 0 ? "out" : "in"));
+                }
+            }
+            return new TerminalMessage(JSONCreator.COMMAND, cmd, ports);
+        }
+        return null;
+    }
+
+    private static TerminalMessage parse(JSONParsor parsor) {
+        if (parsor.hasTag(JSONCreator.COMMAND)) {
+            String cmd = parsor.getData(JSONCreator.COMMAND);
+            ArrayList<ConnectorPort> ports = null;
+            if (cmd != null && cmd.equalsIgnoreCase(JSONCreator.STATUS)) {
+                ports = parsor.getConnectorPortArray(JSONCreator.GPIOS);
+            }
+            return new TerminalMessage(JSONCreator.COMMAND, cmd, ports);
+        } else if (parsor.hasTag(JSONCreator.TERM)) {
+            return new TerminalMessage(JSONCreator.TERM, parsor.getData(JSONCreator.TERM), null);
+        }
+        return null;
+    }
+}
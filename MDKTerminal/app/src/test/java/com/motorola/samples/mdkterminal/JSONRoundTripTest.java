@@ -0,0 +1,146 @@
+package com.motorola.samples.mdkterminal;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * JSONCreator output framed by JSONFramer and read back by JSONParsor, the way
+ * RawPersonality receives messages.
+ */
+public class JSONRoundTripTest {
+    private static final String ESCAPES = "quote \" backslash \\ slash / tab \t cr \r lf \n bell \u0007";
+    private static final String NON_ASCII = "\u00b0C caf\u00e9 \u20ac \u65e5\u672c \ud83d\ude00";
+
+    @Test
+    public void term_roundTrip() throws Exception {
+        TerminalMessage message = single(term("echo hello"));
+        assertEquals(JSONCreator.TERM, message.tag);
+        assertEquals("echo hello", message.data);
+        assertNull(message.ports);
+    }
+
+    @Test
+    public void escapes_roundTrip() throws Exception {
+        assertEquals(ESCAPES, single(term(ESCAPES)).data);
+    }
+
+    @Test
+    public void nonAscii_roundTrip() throws Exception {
+        assertEquals(NON_ASCII, single(term(NON_ASCII)).data);
+    }
+
+    @Test
+    public void gpioArray_roundTrip() throws Exception {
+        TerminalMessage message = single(status(8));
+        assertEquals(JSONCreator.COMMAND, message.tag);
+        assertEquals(JSONCreator.STATUS, message.data);
+        assertNotNull(message.ports);
+        assertEquals(8, message.ports.size());
+        for (int i = 0; i < 8; i++) {
+            ConnectorPort port = message.ports.get(i);
+            assertEquals("A", port.port);
+            assertEquals(i, port.pin);
+            assertEquals(i & 1, port.level);
+            assertEquals((i & 2) != 0 ? "out" : "in", port.direction);
+        }
+    }
+
+    @Test
+    public void emptyGpioArray_roundTrip() throws Exception {
+        TerminalMessage message = single(status(0));
+        assertNotNull(message.ports);
+        assertEquals(0, message.ports.size());
+    }
+
+    @Test
+    public void tagAfterGpioArray_isSeparated() throws Exception {
+        JSONCreator json = status(2);
+        json.createCmd("after", JSONCreator.TERM);
+
+        // JSONParsor skips commas, so check the wire bytes as well
+        assertTrue(json.toString(), json.toString().contains("],\"term\":"));
+        JSONParsor parsor = new JSONParsor(json.toByteArray());
+        assertTrue(parsor.hasTag(JSONCreator.COMMAND));
+        assertEquals(2, parsor.getConnectorPortArray(JSONCreator.GPIOS).size());
+        assertEquals("after", parsor.getData(JSONCreator.TERM));
+    }
+
+    @Test
+    public void splitReads_roundTrip() throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        ArrayList<String> sent = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            byte[] bytes;
+            if (i % 5 == 0) {
+                bytes = status(4).toByteArray();
+                sent.add(JSONCreator.STATUS);
+            } else {
+                String text = i + ": " + ESCAPES + " {[}] " + NON_ASCII;
+                bytes = term(text).toByteArray();
+                sent.add(text);
+            }
+            stream.write(bytes, 0, bytes.length);
+            // Noise between messages is skipped
+            stream.write('\n');
+        }
+        byte[] all = stream.toByteArray();
+
+        // Every read size, including 1 byte reads that split UTF-8 sequences
+        for (int chunk = 1; chunk <= 64; chunk++) {
+            ArrayList<TerminalMessage> received = frame(all, chunk);
+            assertEquals("chunk " + chunk, sent.size(), received.size());
+            for (int i = 0; i < sent.size(); i++) {
+                assertEquals("chunk " + chunk, sent.get(i), received.get(i).data);
+            }
+        }
+        assertEquals(sent.size(), frame(all, all.length).size());
+    }
+
+    private static JSONCreator term(String text) {
+        JSONCreator json = new JSONCreator();
+        json.createCmd(text, JSONCreator.TERM);
+        return json;
+    }
+
+    private static JSONCreator status(int ports) {
+        JSONCreator json = new JSONCreator();
+        json.createCmd(JSONCreator.STATUS, JSONCreator.COMMAND);
+        for (int i = 0; i < ports; i++) {
+            json.addConfig("A", i, i & 1, (i & 2) != 0 ? "out" : "in");
+        }
+        json.generateConfig();
+        return json;
+    }
+
+    private static TerminalMessage single(JSONCreator json) {
+        ArrayList<TerminalMessage> received = frame(json.toByteArray(), 7);
+        assertEquals(1, received.size());
+        return received.get(0);
+    }
+
+    // Feed stream in reads of chunk bytes, parsing each framed object
+    private static ArrayList<TerminalMessage> frame(byte[] stream, int chunk) {
+        final ArrayList<TerminalMessage> received = new ArrayList<>();
+        JSONFramer framer = new JSONFramer(new JSONFramer.Listener() {
+            @Override
+            public void onObject(byte[] data, int length) {
+                TerminalMessage message = TerminalMessage.parse(data, 0, length);
+                assertNotNull(new String(data, 0, length), message);
+                received.add(message);
+            }
+        });
+        for (int start = 0; start < stream.length; start += chunk) {
+            byte[] read = new byte[Math.min(chunk, stream.length - start)];
+            System.arraycopy(stream, start, read, 0, read.length);
+            for (int offset = 0; offset < read.length; ) {
+                offset += framer.feed(read, offset, read.length - offset);
+            }
+        }
+        assertTrue(framer.isIdle());
+        return received;
+    }
+}
@@ -0,0 +1,167 @@
+package com.motorola.samples.mdkterminal;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * TLVCreator frames read back by TLVFramer and TerminalMessage.fromFrame().
+ */
+public class TLVRoundTripTest {
+    private static final String NON_ASCII = "\u00b0C caf\u00e9 \u20ac \u65e5\u672c \ud83d\ude00";
+
+    @Test
+    public void term_roundTrip() throws Exception {
+        for (boolean crc : new boolean[]{true, false}) {
+            Receiver receiver = new Receiver();
+            receiver.feed(term("echo " + NON_ASCII, crc), 3);
+            assertEquals(1, receiver.messages.size());
+            assertEquals(JSONCreator.TERM, receiver.messages.get(0).tag);
+            assertEquals("echo " + NON_ASCII, receiver.messages.get(0).data);
+        }
+    }
+
+    @Test
+    public void gpioStatus_roundTrip() throws Exception {
+        TLVCreator tlv = new TLVCreator(true);
+        tlv.createCmd(JSONCreator.STATUS, JSONCreator.COMMAND);
+        for (int i = 0; i < 8; i++) {
+            tlv.addConfig("B", i, i & 1, (i & 2) != 0 ? "out" : "in");
+        }
+        tlv.generateConfig();
+
+        Receiver receiver = new Receiver();
+        receiver.feed(tlv.toByteArray(), 1);
+        assertEquals(1, receiver.messages.size());
+        TerminalMessage message = receiver.messages.get(0);
+        assertEquals(JSONCreator.COMMAND, message.tag);
+        assertEquals(JSONCreator.STATUS, message.data);
+        assertEquals(8, message.ports.size());
+        for (int i = 0; i < 8; i++) {
+            ConnectorPort port = message.ports.get(i);
+            assertEquals("B", port.port);
+            assertEquals(i, port.pin);
+            assertEquals(i & 1, port.level);
+            assertEquals((i & 2) != 0 ? "out" : "in", port.direction);
+        }
+    }
+
+    @Test
+    public void badCrc_isDropped() throws Exception {
+        byte[] first = term("first", true);
+        byte[] second = term("second", true);
+        first[TLVFramer.HEADER_BYTES + 1] ^= 0x20;
+
+        Receiver receiver = new Receiver();
+        receiver.feed(concat(first, second), 4);
+        assertEquals(1, receiver.framer.getCrcErrorCount());
+        assertEquals(1, receiver.messages.size());
+        assertEquals("second", receiver.messages.get(0).data);
+    }
+
+    @Test
+    public void garbage_resyncs() throws Exception {
+        // Noise, then a header claiming an oversized payload
+        byte[] garbage = {0x00, 0x7b, (byte) 0xff,
+                (byte) TLVFramer.MAGIC, 1, 0, (byte) 0xff, (byte) 0xff};
+        byte[] stream = concat(garbage, term("after", true));
+
+        for (int chunk = 1; chunk <= stream.length; chunk++) {
+            Receiver receiver = new Receiver();
+            receiver.feed(stream, chunk);
+            assertEquals("chunk " + chunk, 1, receiver.framer.getBadHeaderCount());
+            assertEquals("chunk " + chunk, 1, receiver.messages.size());
+            assertEquals("chunk " + chunk, "after", receiver.messages.get(0).data);
+            assertTrue(receiver.framer.isIdle());
+        }
+    }
+
+    @Test
+    public void longTerm_isSplitIntoFrames() throws Exception {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 3 * TLVFramer.MAX_PAYLOAD) {
+            text.append(NON_ASCII);
+        }
+
+        Receiver receiver = new Receiver();
+        receiver.feed(term(text.toString(), true), 1000);
+        assertTrue(receiver.messages.size() > 1);
+        StringBuilder joined = new StringBuilder();
+        for (TerminalMessage message : receiver.messages) {
+            assertEquals(JSONCreator.TERM, message.tag);
+            joined.append(message.data);
+        }
+        assertEquals(text.toString(), joined.toString());
+        assertEquals(0, receiver.framer.getBadHeaderCount());
+        assertEquals(0, receiver.framer.getCrcErrorCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void oversizedCommand_isRejected() throws Exception {
+        TLVCreator tlv = new TLVCreator(true);
+        tlv.createCmd(JSONCreator.STATUS, JSONCreator.COMMAND);
+        for (int i = 0; i <= TLVFramer.MAX_PAYLOAD / TLVFramer.GPIO_BYTES; i++) {
+            tlv.addConfig("A", i, 0, "in");
+        }
+        tlv.toByteArray();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void longCommandWord_isRejected() throws Exception {
+        char[] word = new char[256];
+        Arrays.fill(word, 'x');
+        new TLVCreator(true).createCmd(new String(word), JSONCreator.COMMAND);
+    }
+
+    @Test
+    public void crcSetting_appliesAfterReset() throws Exception {
+        TLVCreator tlv = new TLVCreator(true);
+        tlv.setCrc(false);
+        tlv.reset();
+        tlv.createCmd("abc", JSONCreator.TERM);
+        byte[] bytes = tlv.toByteArray();
+        assertEquals(0, bytes[2] & TLVFramer.FLAG_CRC);
+        assertEquals(TLVFramer.HEADER_BYTES + "abc".getBytes(StandardCharsets.UTF_8).length,
+                bytes.length);
+    }
+
+    private static byte[] term(String text, boolean crc) {
+        TLVCreator tlv = new TLVCreator(crc);
+        tlv.createCmd(text, JSONCreator.TERM);
+        return tlv.toByteArray();
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(a, 0, a.length);
+        stream.write(b, 0, b.length);
+        return stream.toByteArray();
+    }
+
+    private static class Receiver implements TLVFramer.Listener {
+        final TLVFramer framer = new TLVFramer(this);
+        final ArrayList<TerminalMessage> messages = new ArrayList<>();
+
+        @Override
+        public void onFrame(int type, byte[] payload, int length) {
+            TerminalMessage message = TerminalMessage.fromFrame(type, payload, length);
+            assertNotNull(message);
+            messages.add(message);
+        }
+
+        // Feed stream in reads of chunk bytes
+        void feed(byte[] stream, int chunk) {
+            for (int start = 0; start < stream.length; start += chunk) {
+                int end = Math.min(start + chunk, stream.length);
+                for (int offset = start; offset < end; ) {
+                    offset += framer.feed(stream, offset, end - offset);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.modbot;
+
+/**
+ * Turns raw joystick axis samples into proportional motor speeds.
+ *
+ * Each axis gets a dead zone around center, rescaled so speed starts from zero
+ * at its edge, then exponential smoothing with a time constant so the result
+ * does not depend on how many samples the input system batches per event.
+ */
+public class JoystickFilter {
+    public static final float DEFAULT_DEAD_ZONE = 0.15f;
+    public static final long DEFAULT_SMOOTHING_MS = 60;
+
+    private static final int MAX_SPEED = 100;
+    private static final float SNAP = 0.005f;
+
+    private float deadZone = DEFAULT_DEAD_ZONE;
+    private long smoothingMs = DEFAULT_SMOOTHING_MS;
+
+    private float left = 0;
+    private float right = 0;
+    private float rawLeft = 0;
+    private float rawRight = 0;
+    private long lastTime = -1;
+
+    // Fraction of the axis range around center treated as zero
+    public void setDeadZone(float zone) {
+        deadZone = Math.max(0f, Math.min(zone, 0.9f));
+    }
+
+    public float getDeadZone() {
+        return deadZone;
+    }
+
+    // Time constant of the smoothing, 0 follows the stick directly
+    public void setSmoothing(long ms) {
+        smoothingMs = Math.max(0, ms);
+    }
+
+    public long getSmoothing() {
+        return smoothingMs;
+    }
+
+    public void reset() {
+        left = right = 0;
+        rawLeft = rawRight = 0;
+        lastTime = -1;
+    }
+
+    // Axis values in -1..1, time in the uptimeMillis base of MotionEvent
+    public void addSample(float axisLeft, float axisRight, long timeMs) {
+        rawLeft = axisLeft;
+        rawRight = axisRight;
+
+        float targetLeft = shape(axisLeft);
+        float targetRight = shape(axisRight);
+
+        float alpha = 1f;
+        if (smoothingMs > 0 && lastTime >= 0) {
+            long dt = Math.max(0, timeMs - lastTime);
+            alpha = 1f - (float) Math.exp(-(double) dt / smoothingMs);
+        }
+        lastTime = timeMs;
+
+        left = approach(left, targetLeft, alpha);
+        right = approach(right, targetRight, alpha);
+    }
+
+    // Hold the last sample until timeMs, lets smoothing settle without new events
+    public void hold(long timeMs) {
+        if (lastTime >= 0) {
+            addSample(rawLeft, rawRight, timeMs);
+        }
+    }
+
+    public byte getLeftSpeed() {
+        return toSpeed(left);
+    }
+
+    public byte getRightSpeed() {
+        return toSpeed(right);
+    }
+
+    private float shape(float value) {
+        float mag = Math.min(Math.abs(value), 1f);
+        if (mag <= deadZone) {
+            return 0;
+        }
+        float scaled = (mag - deadZone) / (1f - deadZone);
+        return value < 0 ? -scaled : scaled;
+    }
+
+    private static float approach(float current, float target, float alpha) {
+        float next = current + alpha * (target - current);
+        if (Math.abs(next - target) < SNAP) {
+            return target;
+        }
+        return next;
+    }
+
+    // Pushing the stick forward reports negative values
+    private static byte toSpeed(float value) {
+        int speed = Math.round(-value * MAX_SPEED);
+        return (byte) Math.max(-MAX_SPEED, Math.min(MAX_SPEED, speed));
+    }
+}
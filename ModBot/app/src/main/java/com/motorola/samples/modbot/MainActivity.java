@@ -4,10 +4,13 @@ import android.content.pm.PackageManager;
 import android.content.res.Resources;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
 import android.graphics.Color;
 import android.view.InputDevice;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.MotionEvent;
 import android.view.View;
 import android.widget.TextView;
@@ -15,6 +18,9 @@ import android.widget.TextView;
 import com.motorola.mod.ModDevice;
 import com.motorola.mod.ModManager;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 
 public class MainActivity extends AppCompatActivity {
     ModManagerInterface modMgr;
@@ -24,12 +30,34 @@ public class MainActivity extends AppCompatActivity {
     byte curLeft  = Constants.STOP;
     byte curRight = Constants.STOP;
 
+    JoystickFilter joystick = new JoystickFilter();
+    int leftState = 0;      // Direction shown for each motor, -1, 0 or 1
+    int rightState = 0;
+
     // Show state
     View lfv;   // Left forward view
     View rfv;   // Right forward view
     View lrv;   // Left reverse view
     View rrv;   // Right reverse view
     TextView vidView;  // Current Mod's VID/PID
+    MetricsOverlay metricsOverlay;
+
+    // Re-assert the current speed while the UI is alive, ModBotRaw stops the
+    // motors if it hears nothing within its watchdog timeout
+    private static final long KEEP_ALIVE_MS = ModBotRaw.DEFAULT_WATCHDOG_MS / 3;
+    private Handler keepAliveHandler = new Handler();
+    private Runnable keepAlive = new Runnable() {
+        @Override
+        public void run() {
+            if (modBotRaw != null && modActive) {
+                // Let smoothing settle while the stick is held still
+                joystick.hold(SystemClock.uptimeMillis());
+                applyJoystick();
+                modBotRaw.setSpeed(curLeft, curRight);
+                keepAliveHandler.postDelayed(this, KEEP_ALIVE_MS);
+            }
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -41,6 +69,7 @@ public class MainActivity extends AppCompatActivity {
         lrv = findViewById(R.id.left_reverse);
         rrv = findViewById(R.id.right_reverse);
         vidView = (TextView) findViewById(R.id.vidView);
+        metricsOverlay = new MetricsOverlay(this);
     }
 
     @Override
@@ -49,17 +78,24 @@ public class MainActivity extends AppCompatActivity {
 
         setAllBoxes(Color.RED);
         initModManager();
+        if (modActive) {
+            keepAliveHandler.post(keepAlive);
+        }
+        metricsOverlay.resume();
     }
 
     @Override
     protected void onPause() {
         super.onPause();
+        keepAliveHandler.removeCallbacks(keepAlive);
+        metricsOverlay.pause();
 
         if (modBotRaw != null) {
             curLeft  = Constants.STOP;
             curRight = Constants.STOP;
             modBotRaw.setSpeed(curLeft, curRight);
         }
+        joystick.reset();
     }
 
     @Override
@@ -68,6 +104,32 @@ public class MainActivity extends AppCompatActivity {
         releaseModManager();
     }
 
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_main, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_metrics) {
+            boolean show = !metricsOverlay.isVisible();
+            metricsOverlay.setVisible(show);
+            item.setChecked(show);
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    // Raw channel metrics are included in: adb shell dumpsys activity <package>
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        writer.print(prefix);
+        writer.println("Metrics:");
+        Metrics.get().dump(prefix + "  ", writer);
+    }
+
     // Initialize connection
     private void initModManager() {
         if (null == modMgr) {
@@ -105,6 +167,7 @@ public class MainActivity extends AppCompatActivity {
             setAllBoxes(Color.RED);
             vidView.setText(getResources().getString(R.string.no_mod));
             modActive = false;
+            keepAliveHandler.removeCallbacks(keepAlive);
         } else {
             if (device.getVendorId() == Constants.VID_DEVELOPER) {
                 if (null == modBotRaw) {
@@ -134,9 +197,14 @@ public class MainActivity extends AppCompatActivity {
                     //Enable the UX Controls here
                     setAllBoxes(Color.BLACK);
                     modActive = true;
+                    keepAliveHandler.removeCallbacks(keepAlive);
+                    keepAliveHandler.post(keepAlive);
                     break;
                 case ModBotRaw.MSG_RAW_DATA:
                     //No data expected from Mod
+                    if (modBotRaw != null) {
+                        modBotRaw.releaseBuffer((byte[]) msg.obj);
+                    }
                     break;
             }
         }
@@ -158,6 +226,8 @@ public class MainActivity extends AppCompatActivity {
         rfv.setBackgroundColor(color);
         lrv.setBackgroundColor(color);
         rrv.setBackgroundColor(color);
+        leftState = 0;
+        rightState = 0;
     }
 
     // Handle input from a Game Controller
@@ -168,12 +238,22 @@ public class MainActivity extends AppCompatActivity {
                 InputDevice.SOURCE_JOYSTICK &&
                 event.getAction() == MotionEvent.ACTION_MOVE) {
 
-            // Process all historical movement samples in the batch
-            final int historySize = event.getHistorySize();
-
             if (modActive) {
+                InputDevice device = event.getDevice();
+                InputDevice.MotionRange leftRange =
+                        device.getMotionRange(MotionEvent.AXIS_Y, event.getSource());
+                InputDevice.MotionRange rightRange =
+                        device.getMotionRange(MotionEvent.AXIS_RZ, event.getSource());
+
+                // Process all historical movement samples in the batch, oldest first
+                final int historySize = event.getHistorySize();
+                for (int i = 0; i < historySize; i++) {
+                    processJoystickInput(event, leftRange, rightRange, i);
+                }
+
                 // Process the current movement sample in the batch (position -1)
-                processJoystickInput(event, -1);
+                processJoystickInput(event, leftRange, rightRange, -1);
+                applyJoystick();
             }
 
             return true;
@@ -182,10 +262,7 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private static float getCenteredAxis(MotionEvent event,
-                                         InputDevice device, int axis, int historyPos) {
-        final InputDevice.MotionRange range =
-                device.getMotionRange(axis, event.getSource());
-
+                                         InputDevice.MotionRange range, int axis, int historyPos) {
         // A joystick at rest does not always report an absolute position of
         // (0,0). Use the getFlat() method to determine the range of values
         // bounding the joystick axis center.
@@ -204,53 +281,42 @@ public class MainActivity extends AppCompatActivity {
         return 0;
     }
 
-    private void processJoystickInput(MotionEvent event,
-                                      int historyPos) {
-
-        InputDevice mInputDevice = event.getDevice();
-
-        // Calculate the vertical distance to move by
-        // using the input value from one of these physical controls:
-        // the left control stick, hat switch, or the right control stick.
-        float left = getCenteredAxis(event, mInputDevice,
-                MotionEvent.AXIS_Y, historyPos);
-        float right = getCenteredAxis(event, mInputDevice,
-                MotionEvent.AXIS_RZ, historyPos);
-        byte newLeft = Constants.STOP;
-        byte newRight = Constants.STOP;
-
-        if (left > 0.5f) {
-            lrv.setBackgroundColor(Color.GREEN);
-            lfv.setBackgroundColor(Color.BLACK);
-            newLeft = -100;
-        } else if (left < -0.5f) {
-            lrv.setBackgroundColor(Color.BLACK);
-            lfv.setBackgroundColor(Color.GREEN);
-            newLeft = 100;
-        } else {
-            lfv.setBackgroundColor(Color.BLACK);
-            lrv.setBackgroundColor(Color.BLACK);
-        }
-        if (right > 0.5f) {
-            rrv.setBackgroundColor(Color.GREEN);
-            rfv.setBackgroundColor(Color.BLACK);
-            newRight = -100;
-        } else if (right < -0.5f) {
-            rrv.setBackgroundColor(Color.BLACK);
-            rfv.setBackgroundColor(Color.GREEN);
-            newRight = 100;
-        } else {
-            rfv.setBackgroundColor(Color.BLACK);
-            rrv.setBackgroundColor(Color.BLACK);
-        }
+    private void processJoystickInput(MotionEvent event, InputDevice.MotionRange leftRange,
+                                      InputDevice.MotionRange rightRange, int historyPos) {
+        // Vertical position of the left control stick and the right control stick
+        float left = getCenteredAxis(event, leftRange, MotionEvent.AXIS_Y, historyPos);
+        float right = getCenteredAxis(event, rightRange, MotionEvent.AXIS_RZ, historyPos);
+        long time = historyPos < 0 ? event.getEventTime() :
+                event.getHistoricalEventTime(historyPos);
 
-        if (modBotRaw != null) {
-            if ((newLeft != curLeft) || (newRight != curRight)) {
-                curLeft = newLeft;
-                curRight = newRight;
+        joystick.addSample(left, right, time);
+    }
+
+    // Send the filtered speeds, and touch the Views only when a direction changes
+    private void applyJoystick() {
+        byte newLeft = joystick.getLeftSpeed();
+        byte newRight = joystick.getRightSpeed();
+
+        if ((newLeft != curLeft) || (newRight != curRight)) {
+            curLeft = newLeft;
+            curRight = newRight;
+            if (modBotRaw != null) {
                 modBotRaw.setSpeed(curLeft, curRight);
             }
         }
+
+        int newLeftState = Integer.signum(newLeft);
+        if (newLeftState != leftState) {
+            leftState = newLeftState;
+            lfv.setBackgroundColor(leftState > 0 ? Color.GREEN : Color.BLACK);
+            lrv.setBackgroundColor(leftState < 0 ? Color.GREEN : Color.BLACK);
+        }
+        int newRightState = Integer.signum(newRight);
+        if (newRightState != rightState) {
+            rightState = newRightState;
+            rfv.setBackgroundColor(rightState > 0 ? Color.GREEN : Color.BLACK);
+            rrv.setBackgroundColor(rightState < 0 ? Color.GREEN : Color.BLACK);
+        }
     }
 
 }
@@ -0,0 +1,308 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.modbot;
+
+import android.os.SystemClock;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide registry of raw channel counters, gauges and latency histograms.
+ *
+ * Metrics are looked up by name once, when their owner is created, and then
+ * updated from the hot path without locks or allocation. report() renders
+ * everything as text, with per-second rates over the time since the previous
+ * report, for the in-app overlay and for dumpsys.
+ */
+public class Metrics {
+    private static final Metrics INSTANCE = new Metrics();
+
+    public static Metrics get() {
+        return INSTANCE;
+    }
+
+    private final List<Counter> counters = new ArrayList<>();
+    private final List<Gauge> gauges = new ArrayList<>();
+    private final List<Histogram> histograms = new ArrayList<>();
+    private long lastReport = SystemClock.elapsedRealtime();
+
+    public synchronized Counter counter(String name) {
+        for (Counter c : counters) {
+            if (c.name.equals(name)) {
+                return c;
+            }
+        }
+        Counter c = new Counter(name);
+        counters.add(c);
+        return c;
+    }
+
+    public synchronized Gauge gauge(String name) {
+        for (Gauge g : gauges) {
+            if (g.name.equals(name)) {
+                return g;
+            }
+        }
+        Gauge g = new Gauge(name);
+        gauges.add(g);
+        return g;
+    }
+
+    public synchronized Histogram histogram(String name) {
+        for (Histogram h : histograms) {
+            if (h.name.equals(name)) {
+                return h;
+            }
+        }
+        Histogram h = new Histogram(name);
+        histograms.add(h);
+        return h;
+    }
+
+    public synchronized void reset() {
+        for (Counter c : counters) {
+            c.reset();
+        }
+        for (Gauge g : gauges) {
+            g.reset();
+        }
+        for (Histogram h : histograms) {
+            h.reset();
+        }
+        lastReport = SystemClock.elapsedRealtime();
+    }
+
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        report(sb);
+        return sb.toString();
+    }
+
+    /** Append one line per metric; rates cover the time since the previous report */
+    public synchronized void report(StringBuilder sb) {
+        long now = SystemClock.elapsedRealtime();
+        long elapsed = Math.max(1, now - lastReport);
+        lastReport = now;
+
+        for (Counter c : counters) {
+            long value = c.get();
+            long delta = value - c.reported;
+            c.reported = value;
+            sb.append(c.name).append(": ").append(value)
+                    .append(" (").append(delta * 1000 / elapsed).append("/s)\n");
+        }
+        for (Gauge g : gauges) {
+            sb.append(g.name).append(": ").append(g.get())
+                    .append(" max ").append(g.getMax()).append('\n');
+        }
+        for (Histogram h : histograms) {
+            sb.append(h.name).append(" us: n=").append(h.getCount());
+            if (h.getCount() > 0) {
+                sb.append(" p50=").append(h.percentile(50) / 1000)
+                        .append(" p99=").append(h.percentile(99) / 1000)
+                        .append(" max=").append(h.getMax() / 1000);
+            }
+            sb.append('\n');
+        }
+    }
+
+    /** For Activity.dump(), e.g. adb shell dumpsys activity <package> */
+    public void dump(String prefix, PrintWriter writer) {
+        String report = report();
+        int start = 0;
+        int end;
+        while ((end = report.indexOf('\n', start)) >= 0) {
+            writer.print(prefix);
+            writer.println(report.substring(start, end));
+            start = end + 1;
+        }
+    }
+
+    public static class Counter {
+        final String name;
+        private final AtomicLong value = new AtomicLong();
+        private long reported = 0;      // Guarded by the registry
+
+        Counter(String name) {
+            this.name = name;
+        }
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        public long get() {
+            return value.get();
+        }
+
+        void reset() {
+            value.set(0);
+            reported = 0;
+        }
+    }
+
+    /** Current level of something, e.g. a queue depth, and the highest seen */
+    public static class Gauge {
+        final String name;
+        private final AtomicLong value = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        Gauge(String name) {
+            this.name = name;
+        }
+
+        public void set(long v) {
+            value.set(v);
+            updateMax(max, v);
+        }
+
+        public long get() {
+            return value.get();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        void reset() {
+            value.set(0);
+            max.set(0);
+        }
+    }
+
+    /**
+     * Log-linear histogram of non-negative values, normally nanoseconds.
+     *
+     * Each power of two is split into 8 buckets, so a recorded value is off by
+     * at most 12.5% from the one reported, over the whole long range, with a
+     * fixed 4KB of buckets and no allocation when recording.
+     */
+    public static class Histogram {
+        private static final int SUB_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+        final String name;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        Histogram(String name) {
+            this.name = name;
+        }
+
+        public void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            buckets.incrementAndGet(bucketOf(value));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            updateMax(max, value);
+        }
+
+        /** Record the time since start, taken from System.nanoTime() */
+        public void recordSince(long start) {
+            record(System.nanoTime() - start);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        public long getMean() {
+            long n = count.get();
+            return n == 0 ? 0 : sum.get() / n;
+        }
+
+        /** Lower bound of the bucket holding the given percentile, 0..100 */
+        public long percentile(double percent) {
+            long n = count.get();
+            if (n == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(n * percent / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank && seen > 0) {
+                    return Math.min(bucketFloor(i), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            count.set(0);
+            sum.set(0);
+            max.set(0);
+        }
+
+        static int bucketOf(long value) {
+            if (value < 2 * SUB_BUCKETS) {
+                return (int) value;
+            }
+            int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+            return shift * SUB_BUCKETS + (int) (value >>> shift);
+        }
+
+        static long bucketFloor(int bucket) {
+            if (bucket < 2 * SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = bucket / SUB_BUCKETS - 1;
+            return (long) (bucket - shift * SUB_BUCKETS) << shift;
+        }
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+}
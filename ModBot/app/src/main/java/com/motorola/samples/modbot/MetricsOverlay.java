@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.modbot;
+
+import android.app.Activity;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.view.Gravity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+/**
+ * Small text panel over the activity content showing Metrics.report(),
+ * refreshed once a second while visible.
+ */
+public class MetricsOverlay implements Runnable {
+    private static final long REFRESH_MS = 1000;
+
+    private final TextView view;
+    private final Handler handler = new Handler();
+    private boolean visible = false;
+
+    public MetricsOverlay(Activity activity) {
+        view = new TextView(activity);
+        view.setTypeface(Typeface.MONOSPACE);
+        view.setTextSize(10);
+        view.setTextColor(Color.WHITE);
+        view.setBackgroundColor(0xA0000000);
+        view.setPadding(8, 8, 8, 8);
+        view.setVisibility(View.GONE);
+
+        FrameLayout content = (FrameLayout) activity.findViewById(android.R.id.content);
+        content.addView(view, new FrameLayout.LayoutParams(
+                ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT,
+                Gravity.TOP | Gravity.END));
+    }
+
+    public boolean isVisible() {
+        return visible;
+    }
+
+    public void setVisible(boolean show) {
+        visible = show;
+        view.setVisibility(show ? View.VISIBLE : View.GONE);
+        handler.removeCallbacks(this);
+        if (show) {
+            run();
+        }
+    }
+
+    // Stop refreshing without changing visibility, e.g. in onPause()
+    public void pause() {
+        handler.removeCallbacks(this);
+    }
+
+    public void resume() {
+        if (visible) {
+            handler.removeCallbacks(this);
+            run();
+        }
+    }
+
+    @Override
+    public void run() {
+        view.setText(Metrics.get().report());
+        handler.postDelayed(this, REFRESH_MS);
+    }
+}
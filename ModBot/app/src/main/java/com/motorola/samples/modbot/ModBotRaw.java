@@ -29,12 +29,40 @@
 package com.motorola.samples.modbot;
 
 import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
 import com.motorola.mod.ModDevice;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * ModBot motor control. setSpeed() only stores the latest left/right speed;
+ * a control thread transmits it at a fixed rate, so a burst of input never
+ * queues up stale speeds and command latency stays within one tick. If
+ * setSpeed() is not called within the watchdog timeout the motors are stopped.
+ */
 public class ModBotRaw extends ModRaw {
+    // Coalescing key, only the latest queued speed matters
+    private static final int KEY_SPEED = 0;
+
+    public static final int DEFAULT_RATE_HZ = 50;
+    public static final long DEFAULT_WATCHDOG_MS = 500;
+
+    private static final int STOPPED = packSpeed(Constants.STOP, Constants.STOP);
+
+    private final AtomicInteger speedSlot = new AtomicInteger(STOPPED);
+    private volatile long lastUpdate = 0;           // uptimeMillis of the last setSpeed()
+    private volatile int rateHz = DEFAULT_RATE_HZ;
+    private volatile long watchdogMs = DEFAULT_WATCHDOG_MS;
+    private volatile long watchdogStops = 0;
+    private ControlThread controlThread;
 
     public ModBotRaw(Context c, ModManagerInterface modMgr) {
         super(c, modMgr);
+        setCoalescing(true);
     }
 
     // Always verify you are talking to your Mod
@@ -48,11 +76,126 @@ public class ModBotRaw extends ModRaw {
         return false;
     }
 
-    // Perform
+    @Override
+    public boolean onModDevice(ModDevice d) {
+        if (null == d) {
+            // Stop sending before the channel closes
+            stopControl();
+            return super.onModDevice(d);
+        }
+        boolean ret = super.onModDevice(d);
+        if (ret) {
+            startControl();
+        } else {
+            stopControl();
+        }
+        return ret;
+    }
+
+    // Set the motor speeds, sent with the next control tick. Safe from any thread.
     public void setSpeed(byte left, byte right) {
-        byte[] cmd = new byte[2];
-        cmd[Constants.LEFT_MOTOR] = left;
-        cmd[Constants.RIGHT_MOTOR] = right;
-        sendRaw(cmd);
+        speedSlot.set(packSpeed(left, right));
+        lastUpdate = SystemClock.uptimeMillis();
+    }
+
+    public void setControlRate(int hz) {
+        rateHz = Math.max(1, hz);
+    }
+
+    public int getControlRate() {
+        return rateHz;
+    }
+
+    // Stop the motors when setSpeed() has not been called for this long
+    public void setWatchdogTimeout(long ms) {
+        watchdogMs = ms;
+    }
+
+    public long getWatchdogTimeout() {
+        return watchdogMs;
+    }
+
+    public long getWatchdogStops() {
+        return watchdogStops;
+    }
+
+    private synchronized void startControl() {
+        if (controlThread == null) {
+            controlThread = new ControlThread();
+            controlThread.start();
+        }
+    }
+
+    private synchronized void stopControl() {
+        if (controlThread != null) {
+            controlThread.quit();
+            controlThread = null;
+        }
+        speedSlot.set(STOPPED);
+    }
+
+    private static int packSpeed(byte left, byte right) {
+        return ((left & 0xFF) << 8) | (right & 0xFF);
+    }
+
+    private class ControlThread extends Thread {
+        private volatile boolean running = true;
+        // Command for the last transmitted speed. sendRaw() keeps the array
+        // until it is written, so a new speed gets a new array.
+        private int commandSpeed = -1;
+        private byte[] command;
+
+        public ControlThread() {
+            super("ModBotControl");
+        }
+
+        public void quit() {
+            running = false;
+            interrupt();
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_DISPLAY);
+
+            int sent = STOPPED;
+            long next = System.nanoTime();
+            while (running) {
+                int speed = speedSlot.get();
+                if (speed != STOPPED && SystemClock.uptimeMillis() - lastUpdate > watchdogMs) {
+                    // The UI went quiet, do not keep driving on a stale command
+                    if (speedSlot.compareAndSet(speed, STOPPED)) {
+                        Log.d(Constants.TAG, "Control watchdog, stopping motors");
+                        watchdogStops++;
+                        speed = STOPPED;
+                    }
+                }
+
+                // Keep repeating a moving speed, send STOP once
+                if (speed != STOPPED || sent != STOPPED) {
+                    transmit(speed);
+                    sent = speed;
+                }
+
+                next += 1000000000L / rateHz;
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(this, wait);
+                } else {
+                    // Fell behind, skip the missed ticks rather than bursting
+                    next = System.nanoTime();
+                }
+            }
+        }
+
+        private void transmit(int speed) {
+            if (speed != commandSpeed) {
+                command = new byte[2];
+                command[Constants.LEFT_MOTOR] = (byte) (speed >> 8);
+                command[Constants.RIGHT_MOTOR] = (byte) speed;
+                commandSpeed = speed;
+            }
+            sendRaw(command, KEY_SPEED);
+        }
     }
 }
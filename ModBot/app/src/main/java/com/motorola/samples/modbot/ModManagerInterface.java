@@ -48,7 +48,6 @@ import com.motorola.mod.ModManager;
 import com.motorola.mod.ModProtocol;
 
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class ModManagerInterface {
@@ -58,7 +57,7 @@ public class ModManagerInterface {
 
     protected Context context;
 
-    List<Handler> listeners = new ArrayList<>();
+    ListenerDispatcher listeners = new ListenerDispatcher();
     public final static int MSG_MOD_DEVICE = 1;
 
     public ModManagerInterface(Context context) {
@@ -126,7 +125,7 @@ public class ModManagerInterface {
     }
 
     public void registerListener(Handler listener) {
-        listeners.add(listener);
+        listeners.register(listener);
     }
 
     public ModDevice getModDevice() {
@@ -138,25 +137,16 @@ public class ModManagerInterface {
     }
 
     protected void notifyListeners(int what) {
-        for (Handler handler : listeners) {
-            handler.sendEmptyMessage(what);
-        }
+        listeners.send(what);
     }
 
+    // Each listener gets its own copy, delivered on its next frame
     protected void notifyListeners(Message msg) {
-        for (Handler handler : listeners) {
-            handler.sendMessage(msg);
-        }
+        listeners.send(msg);
     }
 
     protected void notifyListeners(int what, int arg) {
-        Message msg = Message.obtain();
-        msg.what = what;
-        msg.arg1 = arg;
-
-        for (Handler handler : listeners) {
-            handler.sendMessage(msg);
-        }
+        listeners.send(what, arg);
     }
 
     private ServiceConnection mConnection = new ServiceConnection() {
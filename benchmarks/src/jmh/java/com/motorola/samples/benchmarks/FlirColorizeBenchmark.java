@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.benchmarks;
+
+import com.motorola.samples.flirapp.Colormap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Colorizing done by FlirImage.updatePixValue(): palette mapping of one frame
+ * and the copy into the native-order pixel buffer handed to the bitmap.
+ *
+ * A steady window reuses the lookup table, a moving window shifts min/max
+ * every frame as the sensor's auto range does. Equalization rebuilds the
+ * table from the frame histogram every frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FlirColorizeBenchmark {
+    private static final int PIXELS = 80 * 60;
+
+    @Param({"RED_BLUE", "IRON"})
+    public Colormap.Palette palette;
+
+    @Param({"false", "true"})
+    public boolean movingWindow;
+
+    @Param({"false", "true"})
+    public boolean equalize;
+
+    private final short[] raw = new short[PIXELS];
+    private final int[] colors = new int[PIXELS];
+    private final int[] histogram = new int[Colormap.RAW_RANGE];
+    private final IntBuffer pixInts = ByteBuffer.allocateDirect(PIXELS * 4)
+            .order(ByteOrder.nativeOrder()).asIntBuffer();
+    private Colormap colormap;
+    private int min;
+    private int max;
+    private int frame;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        min = 7800;
+        max = 8800;
+        for (int i = 0; i < PIXELS; i++) {
+            raw[i] = (short) (min + 16 + random.nextInt(max - min - 32));
+            histogram[raw[i]]++;
+        }
+        colormap = new Colormap(palette);
+        colormap.setEqualize(equalize);
+    }
+
+    @Benchmark
+    public IntBuffer colorizeFrame() {
+        int shift = movingWindow ? (frame++ & 15) : 0;
+        colormap.map(raw, PIXELS, min + shift, max - shift, histogram, colors);
+        pixInts.clear();
+        pixInts.put(colors);
+        return pixInts;
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.benchmarks;
+
+import com.motorola.samples.flirapp.Colormap;
+import com.motorola.samples.flirapp.FlirStreamScript;
+import com.motorola.samples.flirapp.LineDecoder;
+import com.motorola.samples.flirapp.SensorGeometry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Line parsing done by FlirImage.onData(): one op decodes a full frame of
+ * VoSPI packets, delivered in reads of chunkBytes like the raw device does.
+ * The 160x120 sensor sends four segments per frame, four times the pixels.
+ * With direct on, reads come from a direct ByteBuffer as RawDevice hands them
+ * over, otherwise from a heap array.
+ * With histogram on, values are also counted and the bins zeroed again per
+ * frame, as FlirImage does for equalization.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FlirDecodeBenchmark {
+    @Param({"LEPTON_2", "LEPTON_3"})
+    public String sensor;
+
+    @Param({"true", "false"})
+    public boolean direct;
+
+    @Param({"164", "1024", "9840"})
+    public int chunkBytes;
+
+    @Param({"true", "false"})
+    public boolean crcCheck;
+
+    @Param({"false", "true"})
+    public boolean histogram;
+
+    private byte[] stream;
+    private ByteBuffer directStream;
+    private LineDecoder decoder;
+    private final int[] bins = new int[Colormap.RAW_RANGE];
+    private Blackhole blackhole;
+
+    @Setup
+    public void setup(Blackhole bh) {
+        blackhole = bh;
+        SensorGeometry geometry = "LEPTON_3".equals(sensor)
+                ? SensorGeometry.LEPTON_3 : SensorGeometry.LEPTON_2;
+        stream = new FlirStreamScript(geometry, 9).buildFrame(0).clone();
+        directStream = ByteBuffer.allocateDirect(stream.length);
+        directStream.put(stream);
+        decoder = new LineDecoder(geometry, new LineDecoder.Listener() {
+            @Override
+            public void onFrame(short[] frame, int min, int max) {
+                blackhole.consume(min);
+                blackhole.consume(max);
+                if (histogram) {
+                    blackhole.consume(bins[min]);
+                    for (int v = min; v <= max; v++) {
+                        bins[v] = 0;
+                    }
+                }
+            }
+        });
+        decoder.setCrcCheck(crcCheck);
+        decoder.setHistogram(histogram ? bins : null);
+    }
+
+    @Benchmark
+    public int decodeFrame() {
+        for (int offset = 0; offset < stream.length; offset += chunkBytes) {
+            int length = Math.min(chunkBytes, stream.length - offset);
+            if (direct) {
+                directStream.limit(offset + length).position(offset);
+                decoder.decode(directStream);
+            } else {
+                decoder.decode(stream, offset, length);
+            }
+        }
+        return decoder.getCrcErrorCount();
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.benchmarks;
+
+import com.motorola.samples.flirapp.FrameCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FrameRecorder compression of one 80x60 frame with FrameCodec.
+ *
+ * Frames alternate between two captures of a static scene that differ only by
+ * sensor noise, of noise counts on a fraction of the pixels. Encoded sizes
+ * are listed in the README.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FrameCodecBenchmark {
+    private static final int PIXELS = 80 * 60;
+    private static final int KEY_INTERVAL = 64;
+
+    @Param({"0", "2", "8"})
+    public int noise;
+
+    private final short[][] frames = new short[2][PIXELS];
+    private final short[] decoded = new short[PIXELS];
+    private final byte[][] encoded = new byte[2][FrameCodec.maxEncodedSize(PIXELS)];
+    private final int[] encodedLength = new int[2];
+    private final byte[] output = new byte[FrameCodec.maxEncodedSize(PIXELS)];
+    private FrameCodec encoder;
+    private FrameCodec decoder;
+    private int frame;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        for (int i = 0; i < PIXELS; i++) {
+            // Smooth background with a warm object in the middle
+            int x = i % 80;
+            int y = i / 80;
+            int base = 7900 + y * 2 + ((x > 30 && x < 50 && y > 20 && y < 40) ? 600 : 0);
+            frames[0][i] = (short) base;
+            frames[1][i] = (short) (noise > 0 && random.nextInt(4) == 0
+                    ? base + random.nextInt(2 * noise + 1) - noise : base);
+        }
+
+        // A key frame, then delta frames 1 after 0 and 0 after 1, decoded in turn forever
+        FrameCodec codec = new FrameCodec(PIXELS, Integer.MAX_VALUE);
+        int keyLength = codec.encode(frames[0], output, 0);
+        encodedLength[1] = codec.encode(frames[1], encoded[1], 0);
+        encodedLength[0] = codec.encode(frames[0], encoded[0], 0);
+
+        encoder = new FrameCodec(PIXELS, KEY_INTERVAL);
+        decoder = new FrameCodec(PIXELS, KEY_INTERVAL);
+        decoder.decode(output, 0, keyLength, decoded);
+        frame = 1;
+    }
+
+    @Benchmark
+    public int encodeFrame() {
+        return encoder.encode(frames[frame++ & 1], output, 0);
+    }
+
+    @Benchmark
+    public short[] decodeDeltaFrame() {
+        int i = frame++ & 1;
+        decoder.decode(encoded[i], 0, encodedLength[i], decoded);
+        return decoded;
+    }
+}
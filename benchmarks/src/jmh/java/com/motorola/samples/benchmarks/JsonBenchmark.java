@@ -0,0 +1,191 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.benchmarks;
+
+import com.motorola.samples.mdkterminal.ConnectorPort;
+import com.motorola.samples.mdkterminal.JSONCreator;
+import com.motorola.samples.mdkterminal.JSONFramer;
+import com.motorola.samples.mdkterminal.JSONParsor;
+import com.motorola.samples.mdkterminal.StreamRecorder;
+import com.motorola.samples.mdkterminal.StreamRecording;
+import com.motorola.samples.mdkterminal.TerminalMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MDKTerminal message round trips: terminal commands as sent by the app and
+ * GPIO status replies as parsed on receipt.
+ *
+ * replaySession() runs a StreamRecorder capture through the same framing and
+ * parsing as RawPersonality, read by read. Pass a capture pulled from a device
+ * with -p recording=<path>; by default a synthetic session of terminal output
+ * and status replies, split at random read boundaries, is recorded at setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JsonBenchmark {
+    private static final int GPIO_COUNT = 8;
+    private static final int SESSION_MESSAGES = 1000;
+    private static final int MAX_READ_BYTES = 1024;
+
+    @Param({""})
+    public String recording;
+
+    private String termMessage;
+    private String statusMessage;
+
+    private StreamRecording session;
+    private byte[] readBuffer = new byte[MAX_READ_BYTES];
+    private int parsed;
+    private final JSONFramer framer = new JSONFramer(new JSONFramer.Listener() {
+        @Override
+        public void onObject(byte[] data, int length) {
+            if (TerminalMessage.parse(data, 0, length) != null) {
+                parsed++;
+            }
+        }
+    });
+
+    @Setup
+    public void setup() throws IOException {
+        termMessage = createTerm("echo hello").toString();
+        statusMessage = createStatus().toString();
+
+        File path;
+        if (recording.isEmpty()) {
+            path = File.createTempFile("session", StreamRecorder.EXTENSION);
+            path.deleteOnExit();
+            recordSession(path);
+        } else {
+            path = new File(recording);
+        }
+        session = new StreamRecording(path);
+    }
+
+    @Benchmark
+    public String createTermCommand() {
+        return createTerm("echo hello").toString();
+    }
+
+    @Benchmark
+    public String parseTermData() {
+        JSONParsor parsor = new JSONParsor(termMessage);
+        return parsor.hasTag(JSONCreator.TERM) ? parsor.getData(JSONCreator.TERM) : null;
+    }
+
+    @Benchmark
+    public String termRoundTrip() {
+        JSONParsor parsor = new JSONParsor(createTerm("echo hello").toString());
+        return parsor.getData(JSONCreator.TERM);
+    }
+
+    @Benchmark
+    public String createStatusReply() {
+        return createStatus().toString();
+    }
+
+    @Benchmark
+    public ArrayList<ConnectorPort> parseStatusReply() {
+        JSONParsor parsor = new JSONParsor(statusMessage);
+        if (parsor.hasTag(JSONCreator.COMMAND)) {
+            return parsor.getConnectorPortArray(JSONCreator.GPIOS);
+        }
+        return null;
+    }
+
+    @Benchmark
+    public int replaySession() {
+        session.rewind();
+        framer.reset();
+        parsed = 0;
+        while (session.next()) {
+            if (readBuffer.length < session.getLength()) {
+                readBuffer = new byte[session.getLength()];
+            }
+            int length = session.read(readBuffer, 0);
+            // feed() stops after each complete object
+            for (int offset = 0; offset < length; ) {
+                offset += framer.feed(readBuffer, offset, length - offset);
+            }
+        }
+        return parsed;
+    }
+
+    // Terminal lines with a status reply every 50 messages, cut into random reads
+    private static void recordSession(File path) throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (int i = 0; i < SESSION_MESSAGES; i++) {
+            JSONCreator json = i % 50 == 0 ? createStatus()
+                    : createTerm("line " + i + ": temperature \u00b0C, \"quoted\"\n");
+            byte[] bytes = json.toByteArray();
+            stream.write(bytes, 0, bytes.length);
+        }
+        byte[] bytes = stream.toByteArray();
+
+        Random random = new Random(42);
+        StreamRecorder recorder = new StreamRecorder(path);
+        for (int offset = 0; offset < bytes.length; ) {
+            int length = Math.min(1 + random.nextInt(MAX_READ_BYTES), bytes.length - offset);
+            recorder.record(bytes, offset, length);
+            offset += length;
+        }
+        recorder.close();
+    }
+
+    private static JSONCreator createTerm(String cmd) {
+        JSONCreator json = new JSONCreator();
+        json.createCmd(cmd, JSONCreator.TERM);
+        return json;
+    }
+
+    private static JSONCreator createStatus() {
+        JSONCreator json = new JSONCreator();
+        json.createCmd(JSONCreator.STATUS, JSONCreator.COMMAND);
+        for (int i = 0; i < GPIO_COUNT; i++) {
+            json.addConfig("A", i, i & 1, (i & 2) != 0 ? "out" : "in");
+        }
+        json.generateConfig();
+        return json;
+    }
+}
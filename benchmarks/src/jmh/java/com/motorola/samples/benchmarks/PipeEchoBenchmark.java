@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.benchmarks;
+
+import com.motorola.samples.flirapp.FakeMod;
+import com.motorola.samples.modbot.BufferPool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Echo round trips over a local pipe. Commands are written to a FakeMod running
+ * the echo script and read back into pooled receive buffers.
+ *
+ * This is the pipe and buffer cost under the raw channel only, ModRaw itself
+ * needs Handler and android.system.Os and is not run here.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PipeEchoBenchmark {
+    private static final int MAX_BYTES = 1024;
+
+    @Param({"3", "64", "1024"})
+    public int commandBytes;
+
+    private Pipe toMod;
+    private Pipe toApp;
+    private OutputStream appOut;
+    private InputStream appIn;
+    private FakeMod mod;
+    private BufferPool bufferPool;
+    private byte[] command;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        toMod = Pipe.open();
+        toApp = Pipe.open();
+        appOut = Channels.newOutputStream(toMod.sink());
+        appIn = Channels.newInputStream(toApp.source());
+        mod = new FakeMod(Channels.newInputStream(toMod.source()),
+                Channels.newOutputStream(toApp.sink()), new FakeMod.EchoScript());
+        mod.start();
+
+        bufferPool = new BufferPool(MAX_BYTES, 8);
+        command = new byte[commandBytes];
+        for (int i = 0; i < commandBytes; i++) {
+            command[i] = (byte) i;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        mod.stop();
+        toMod.sink().close();
+        toApp.source().close();
+        toMod.source().close();
+        toApp.sink().close();
+    }
+
+    @Benchmark
+    public int sendReceive() throws IOException {
+        appOut.write(command, 0, command.length);
+
+        int received = 0;
+        while (received < command.length) {
+            byte[] buffer = bufferPool.acquire();
+            int len = appIn.read(buffer, 0, bufferPool.getBufferSize());
+            if (len < 0) {
+                throw new IOException("Pipe closed");
+            }
+            received += len;
+            bufferPool.release(buffer);
+        }
+        return received;
+    }
+}
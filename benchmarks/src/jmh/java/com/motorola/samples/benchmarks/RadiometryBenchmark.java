@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.benchmarks;
+
+import com.motorola.samples.flirapp.Radiometry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Raw counts to degrees Celsius for one frame, through Radiometry's table
+ * against evaluating the inverted Planck curve for every pixel.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RadiometryBenchmark {
+    @Param({"4800", "19200"})
+    public int pixels;
+
+    private short[] frame;
+    private float[] celsius;
+    private int[] centiKelvin;
+    private Radiometry radiometry;
+
+    @Setup
+    public void setup() {
+        frame = new short[pixels];
+        Random random = new Random(42);
+        for (int i = 0; i < pixels; i++) {
+            frame[i] = (short) (7400 + random.nextInt(1200));
+        }
+        celsius = new float[pixels];
+        centiKelvin = new int[pixels];
+        radiometry = new Radiometry(Radiometry.LEPTON_NOMINAL);
+        radiometry.setEmissivity(0.95);
+        // Build the table outside of the measurement
+        radiometry.toCelsius(frame, 1, celsius);
+    }
+
+    @Benchmark
+    public float[] tableCelsius() {
+        radiometry.toCelsius(frame, pixels, celsius);
+        return celsius;
+    }
+
+    @Benchmark
+    public int[] tableCentiKelvin() {
+        radiometry.toCentiKelvin(frame, pixels, centiKelvin);
+        return centiKelvin;
+    }
+
+    @Benchmark
+    public float[] planckPerPixel() {
+        Radiometry.Calibration c = radiometry.getCalibration();
+        double e = radiometry.getEmissivity();
+        double reflected = c.counts(radiometry.getReflectedTemperature() + Radiometry.ZERO_CELSIUS) - c.o;
+        for (int i = 0; i < pixels; i++) {
+            double signal = (frame[i] - c.o - (1 - e) * reflected) / e;
+            celsius[i] = (float) (c.kelvin(signal) - Radiometry.ZERO_CELSIUS);
+        }
+        return celsius;
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2017 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.benchmarks;
+
+import com.motorola.samples.flirapp.RegionStats;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statistics of a set of regions of one frame, as FlirImage measures them for
+ * every frame, against summing each region pixel by pixel. The integral images
+ * cost a pass over the frame and pay off as regions grow and overlap; at 256
+ * regions, block sizes shared by many of them are built for min and max.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RegionStatsBenchmark {
+    @Param({"80x60", "160x120"})
+    public String sensor;
+
+    @Param({"1", "32", "256"})
+    public int regions;
+
+    private short[] frame;
+    private int width;
+    private int height;
+    private RegionStats stats;
+    private RegionStats.Region[] regionList;
+
+    @Setup
+    public void setup() {
+        String[] size = sensor.split("x");
+        width = Integer.parseInt(size[0]);
+        height = Integer.parseInt(size[1]);
+        frame = new short[width * height];
+        Random random = new Random(42);
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = (short) (7900 + random.nextInt(200));
+        }
+        stats = new RegionStats(width, height);
+
+        regionList = new RegionStats.Region[regions];
+        for (int i = 0; i < regions; i++) {
+            int w = 4 + random.nextInt(width / 2);
+            int h = 4 + random.nextInt(height / 2);
+            regionList[i] = new RegionStats.Region(random.nextInt(width - w + 1),
+                    random.nextInt(height - h + 1), w, h);
+        }
+    }
+
+    @Benchmark
+    public RegionStats.Region[] integralImages() {
+        stats.update(frame);
+        stats.measure(regionList);
+        return regionList;
+    }
+
+    @Benchmark
+    public RegionStats.Region[] pixelLoops() {
+        for (RegionStats.Region r : regionList) {
+            long sum = 0;
+            long sumSq = 0;
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (int y = r.y; y < r.y + r.height; y++) {
+                for (int i = y * width + r.x; i < y * width + r.x + r.width; i++) {
+                    int v = frame[i];
+                    sum += v;
+                    sumSq += v * v;
+                    min = Math.min(min, v);
+                    max = Math.max(max, v);
+                }
+            }
+            int n = r.width * r.height;
+            r.mean = (double) sum / n;
+            r.stdDev = Math.sqrt(Math.max(0, (double) sumSq / n - r.mean * r.mean));
+            r.min = min;
+            r.max = max;
+        }
+        return regionList;
+    }
+}